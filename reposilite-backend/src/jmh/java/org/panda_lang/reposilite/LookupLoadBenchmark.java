@@ -0,0 +1,115 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Load fixture that runs a real instance and hammers it with GETs of a public artifact.
+ * Besides JMH's throughput, the ProcessCpuProfiler reports the CPU time spent per request, which is what we care about.
+ * 'anonymous-eager' resolves the session of every request up front, the way ReposiliteContext used to,
+ * so it's the baseline the anonymous numbers are compared against.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(8)
+public class LookupLoadBenchmark {
+    private static final String ARTIFACT = "org/example/artifact/1.0.0/artifact-1.0.0.jar";
+
+    @Param({ "anonymous", "anonymous-eager", "authenticated" })
+    public String client;
+
+    private Reposilite reposilite;
+    private String url;
+    private String authorization;
+
+    @Setup(Level.Trial)
+    public void launch() throws Exception {
+        File dir = Files.createTempDirectory("reposilite-jmh").toFile();
+        File artifact = new File(dir, "repositories/main/releases/" + ARTIFACT);
+        artifact.getParentFile().mkdirs();
+        Files.write(artifact.toPath(), new byte[4096]);
+
+        String port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = String.valueOf(socket.getLocalPort());
+        }
+
+        System.setProperty("reposilite.port", port);
+        try {
+            this.reposilite = ReposiliteLauncher.create("", dir.getAbsolutePath(), true);
+            this.reposilite.launch();
+        } finally {
+            System.clearProperty("reposilite.port");
+        }
+
+        this.reposilite.getAuth().createToken("/main", "bench", "r", "secret");
+        if ("anonymous-eager".equals(client)) {
+            // What ReposiliteContext.create did for every request before the session was resolved lazily
+            this.reposilite.getHttpServer().getJavalin().peek(javalin -> javalin.before(ctx -> reposilite.getAuth().getSession(ctx.headerMap())));
+        }
+
+        this.url = "http://localhost:" + port + "/main/" + ARTIFACT;
+        this.authorization = "authenticated".equals(client)
+            ? "Basic " + Base64.getEncoder().encodeToString("bench:secret".getBytes(StandardCharsets.UTF_8))
+            : null;
+    }
+
+    @TearDown(Level.Trial)
+    public void shutdown() throws Exception {
+        reposilite.forceShutdown();
+    }
+
+    @Benchmark
+    public int get() throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        if (authorization != null)
+            connection.setRequestProperty("Authorization", authorization);
+
+        int read = 0;
+        try (InputStream input = connection.getInputStream()) {
+            byte[] buffer = new byte[8192];
+            int count;
+            while ((count = input.read(buffer)) != -1)
+                read += count;
+        }
+
+        return read;
+    }
+}
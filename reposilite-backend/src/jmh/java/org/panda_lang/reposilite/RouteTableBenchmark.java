@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+import org.panda_lang.reposilite.RouteTable.Route;
+import org.panda_lang.reposilite.repository.IRepository;
+import org.panda_lang.reposilite.repository.IRepository.View;
+import org.panda_lang.reposilite.repository.IRepositoryManager;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares resolving the repositories of a request with the precompiled route table,
+ * against the per request parsing ReposiliteContext used to do.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouteTableBenchmark {
+    private static final String[] URIS = {
+        "/releases/net/minecraftforge/forge/1.16.5-36.2.0/forge-1.16.5-36.2.0-installer.jar",
+        "/releases/net/minecraftforge/forge/maven-metadata.xml",
+        "/snapshots/net/minecraftforge/forge/1.17.1-37.0.0-SNAPSHOT/maven-metadata.xml",
+        "/repo0/net/minecraftforge/eventbus/4.0.0/eventbus-4.0.0.pom",
+        "/repo1-releases/de/oceanlabs/mcp/mcp_config/1.16.5/mcp_config-1.16.5.zip",
+        "/repo2-snapshots/cpw/mods/modlauncher/8.0.9/modlauncher-8.0.9.jar.sha1",
+        "/net/minecraftforge/gradle/ForgeGradle/5.1.+/ForgeGradle-5.1.+.pom",
+        "/unknown-releases/org/ow2/asm/asm/9.1/asm-9.1.jar.md5",
+    };
+
+    @Param({ "4", "32" })
+    public int repositories;
+
+    private IRepositoryManager repoManager;
+    private RouteTable routes;
+
+    @Setup
+    public void setup() {
+        IRepositoryManager.Builder builder = IRepositoryManager.builder().dir(new File("repositories"));
+        for (int i = 0; i < repositories; i++)
+            builder.repo("repo" + i, repo -> {});
+
+        this.repoManager = builder.build();
+        this.routes = RouteTable.of(repoManager);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void routeTable(Blackhole blackhole) {
+        for (String uri : URIS) {
+            String sanitized = ReposiliteContext.sanitize(uri);
+            Route route = routes.resolve(sanitized);
+            blackhole.consume(route.repos);
+            blackhole.consume(route.strip ? sanitized.substring(sanitized.indexOf('/') + 1) : sanitized);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(8)
+    public void legacy(Blackhole blackhole) {
+        for (String uri : URIS)
+            legacy(ReposiliteContext.sanitize(uri), blackhole);
+    }
+
+    // Copy of the parsing ReposiliteContext.create did before the route table
+    private void legacy(String sanitized, Blackhole blackhole) {
+        View view = View.ALL;
+        String filepath;
+        List<IRepository> repos = new ArrayList<>();
+
+        int idx = sanitized.indexOf('/');
+        if (idx == -1) {
+            filepath = sanitized;
+            repos.addAll(repoManager.getRepos());
+        } else {
+            String name = sanitized.substring(0, idx);
+            if ("releases".equals(name)) {
+                view = View.RELEASES;
+                repos.addAll(repoManager.getRepos());
+                filepath = sanitized.substring(idx + 1);
+            } else if ("snapshots".equals(name)) {
+                view = View.SNAPSHOTS;
+                repos.addAll(repoManager.getRepos());
+                filepath = sanitized.substring(idx + 1);
+            } else {
+                int hidx = name.indexOf('-');
+                if (hidx > 1) {
+                    String viewName = name.substring(hidx + 1);
+                    if ("releases".equals(viewName)) {
+                        view = View.RELEASES;
+                        name = name.substring(0, hidx);
+                    } else if ("snapshots".equals(viewName)) {
+                        view = View.SNAPSHOTS;
+                        name = name.substring(0, hidx);
+                    }
+                }
+
+                IRepository repo = repoManager.getRepo(name);
+                if (repo == null) {
+                    repos.addAll(repoManager.getRepos());
+                    filepath = sanitized;
+                } else {
+                    repos.add(repo);
+                    filepath = sanitized.substring(idx + 1);
+                }
+            }
+        }
+
+        blackhole.consume(view);
+        blackhole.consume(repos);
+        blackhole.consume(filepath);
+    }
+}
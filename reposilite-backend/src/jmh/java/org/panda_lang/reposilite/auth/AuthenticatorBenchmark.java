@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.auth;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.panda_lang.reposilite.repository.IRepositoryManager;
+import org.panda_lang.utilities.commons.function.Result;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AuthenticatorBenchmark {
+
+    @Param({ "true", "false" })
+    public boolean cached;
+
+    private Authenticator authenticator;
+    private Map<String, String> headers;
+
+    @Setup
+    public void setup() throws Exception {
+        File dir = Files.createTempDirectory("reposilite-jmh").toFile();
+        IRepositoryManager repos = IRepositoryManager.builder()
+            .dir(new File(dir, "repositories"))
+            .repo("main", repo -> {})
+            .build();
+
+        this.authenticator = new Authenticator(dir, repos);
+        this.authenticator.getTokenService().createToken("/main", "alias", "rw", "secret");
+
+        String credentials = Base64.getEncoder().encodeToString("alias:secret".getBytes(StandardCharsets.UTF_8));
+        this.headers = Collections.singletonMap("Authorization", "Basic " + credentials);
+    }
+
+    @Benchmark
+    public Result<Session, String> getSession() {
+        if (!cached)
+            authenticator.getTokenService().getCredentialCache().invalidateAll();
+        return authenticator.getSession(headers);
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * How long it takes until the quotas are known, on a synthetic tree laid out like a Maven repository,
+ * with the parallel DiskUsageScan, with the usage remembered by the QuotaJournal of the last run,
+ * and with the FileUtils.sizeOfDirectory call that used to block startup.
+ * Creating the million files takes a while on its own, and the page cache is warm after the first
+ * iteration, so these are best case numbers for the walks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class DiskUsageScanBenchmark {
+    private static final int FILES_PER_VERSION = 10;
+    private static final int VERSIONS_PER_ARTIFACT = 10;
+    private static final int ARTIFACTS_PER_GROUP = 100;
+
+    @Param({ "1000000" })
+    public int files;
+
+    private final byte[] artifact = new byte[128];
+    private File root;
+    private IRepositoryManager manager;
+
+    @Setup
+    public void setup() throws Exception {
+        this.root = Files.createTempDirectory("reposilite-scan").toFile();
+        this.manager = IRepositoryManager.builder()
+            .dir(root)
+            .repo("main", repo -> {})
+            .build();
+
+        Path releases = manager.getRepo("main").getFile(IRepository.View.RELEASES).toPath();
+        for (int i = 0; i < files; i++) {
+            int version = i / FILES_PER_VERSION;
+            int artifactId = version / VERSIONS_PER_ARTIFACT;
+            int group = artifactId / ARTIFACTS_PER_GROUP;
+
+            Path directory = releases.resolve("group" + group + "/artifact" + artifactId + "/" + version);
+            if (i % FILES_PER_VERSION == 0)
+                Files.createDirectories(directory);
+            Files.write(directory.resolve("artifact" + artifactId + "-" + version + "-" + i + ".jar"), artifact);
+        }
+    }
+
+    // Forgets what the last one remembered, so it's walked again
+    @Setup(Level.Invocation)
+    public void forget() {
+        File directory = manager.getRepo("main").getDirectory();
+        new File(directory, QuotaJournal.SNAPSHOT).delete();
+        new File(directory, QuotaJournal.LOG).delete();
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        FileUtils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    public long scan() throws Exception {
+        DiskQuota total = DiskQuota.unlimited();
+        DiskUsageScan scan = new DiskUsageScan(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        scan.start(total, manager.getRepos(), false).get();
+        return scan.getBytes();
+    }
+
+    @Benchmark
+    public long restore(Remembered remembered) throws Exception {
+        IRepositoryManager manager = remembered.manager;
+        new DiskUsageScan(1).start((DiskQuota)manager.getQuota(), manager.getRepos(), false).get();
+        return manager.getQuota().getUsage();
+    }
+
+    // A restart, after the usage was walked and saved once
+    @State(Scope.Benchmark)
+    public static class Remembered {
+        private IRepositoryManager manager;
+
+        @Setup(Level.Invocation)
+        public void setup(DiskUsageScanBenchmark benchmark) throws Exception {
+            this.manager = IRepositoryManager.builder()
+                .dir(benchmark.root)
+                .repo("main", repo -> {})
+                .build();
+
+            if (new QuotaJournal(manager.getRepo("main").getDirectory()).read() == null) {
+                new DiskUsageScan(4).start(DiskQuota.unlimited(), manager.getRepos(), false).get();
+                manager.save();
+            }
+        }
+    }
+
+    @Benchmark
+    public long sizeOfDirectory() {
+        return FileUtils.sizeOfDirectory(manager.getRepo("main").getDirectory());
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Compares the prefix trie against the linear startsWith scan Repository used to do,
+ * for canContain (a hit, and a miss) and the virtual directory check.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PrefixTrieBenchmark {
+    private static final String[] PATHS = {
+        "net/minecraftforge/group7/artifact/1.0.0/artifact-1.0.0.jar",
+        "org/ow2/asm/asm/9.1/asm-9.1.pom",
+    };
+    private static final String DIRECTORY = "net/minecraftforge";
+
+    @Param({ "10", "100", "1000" })
+    public int prefixCount;
+
+    private final List<String> prefixes = new ArrayList<>();
+    private final PrefixTrie<String> trie = new PrefixTrie<>();
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < prefixCount; i++) {
+            // Spread them over a few top level groups, like a real config would
+            String prefix = (i % 3 == 0 ? "net/minecraftforge/" : i % 3 == 1 ? "de/oceanlabs/" : "cpw/mods/") + "group" + i + '/';
+            prefixes.add(prefix);
+            trie.add(prefix, prefix);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void canContainTrie(Blackhole blackhole) {
+        for (String path : PATHS)
+            blackhole.consume(trie.matches(path));
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(2)
+    public void canContainLinear(Blackhole blackhole) {
+        for (String path : PATHS) {
+            boolean found = false;
+            for (String prefix : prefixes) {
+                if (path.startsWith(prefix)) {
+                    found = true;
+                    break;
+                }
+            }
+            blackhole.consume(found);
+        }
+    }
+
+    @Benchmark
+    public boolean isDirectoryTrie() {
+        return trie.isDirectory(DIRECTORY);
+    }
+
+    @Benchmark
+    public boolean isDirectoryLinear() {
+        String test = DIRECTORY + '/';
+        for (String prefix : prefixes) {
+            if (prefix.startsWith(test))
+                return true;
+        }
+        return false;
+    }
+}
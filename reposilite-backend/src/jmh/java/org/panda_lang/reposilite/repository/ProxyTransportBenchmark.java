@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import com.google.api.client.http.GenericUrl;
+import com.google.api.client.http.HttpRequest;
+import com.google.api.client.http.HttpRequestFactory;
+import com.google.api.client.http.HttpResponse;
+import com.google.api.client.http.javanet.NetHttpTransport;
+import org.apache.commons.io.IOUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * A burst of misses against an embedded Jetty upstream, once through the pooled transport the proxy uses,
+ * and once through a new connection per request, the way it asked upstreams before.
+ * Plain HTTP on localhost, so this only shows the connection setup, a TLS handshake costs a lot more.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ProxyTransportBenchmark {
+    private static final int REQUESTS = 1000;
+
+    @Param({ "/missing.jar", "/artifact.jar" })
+    public String path;
+
+    private final byte[] artifact = new byte[16 * 1024];
+    private final byte[] buffer = new byte[16 * 1024];
+    private Server server;
+    private String url;
+    private UpstreamTransport pooled;
+    private HttpRequestFactory unpooled;
+
+    @Setup
+    public void setup() throws Exception {
+        this.server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request base, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                base.setHandled(true);
+
+                if (!"/artifact.jar".equals(target)) {
+                    response.setStatus(HttpServletResponse.SC_NOT_FOUND);
+                    return;
+                }
+
+                response.setContentLength(artifact.length);
+                response.getOutputStream().write(artifact);
+            }
+        });
+        server.start();
+
+        this.url = "http://localhost:" + ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+        this.pooled = new ApacheUpstreamTransport(64, 16, 30);
+        this.unpooled = new NetHttpTransport().createRequestFactory();
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        pooled.close();
+        server.stop();
+    }
+
+    private long read(InputStream input) throws IOException {
+        long read = 0;
+        int count;
+        while ((count = input.read(buffer)) != -1)
+            read += count;
+        return read;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public long pooled() throws IOException {
+        long read = 0;
+
+        for (int i = 0; i < REQUESTS; i++) {
+            try (UpstreamTransport.Response response = pooled.get(url + path, 3000, 15000).execute()) {
+                if (response.getStatus() == HttpServletResponse.SC_OK) {
+                    try (InputStream input = response.getContent()) {
+                        read += read(input);
+                    }
+                }
+            }
+        }
+
+        return read;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(REQUESTS)
+    public long unpooled() throws IOException {
+        long read = 0;
+
+        for (int i = 0; i < REQUESTS; i++) {
+            HttpRequest request = unpooled.buildGetRequest(new GenericUrl(url + path));
+            request.setThrowExceptionOnExecuteError(false);
+            HttpResponse response = request.execute();
+
+            try {
+                if (response.isSuccessStatusCode()) {
+                    try (InputStream input = response.getContent()) {
+                        read += read(input);
+                    }
+                }
+            } finally {
+                response.disconnect();
+            }
+        }
+
+        return read;
+    }
+}
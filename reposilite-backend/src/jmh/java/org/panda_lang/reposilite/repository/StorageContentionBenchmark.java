@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import org.apache.commons.io.FileUtils;
+import org.panda_lang.reposilite.repository.IRepository.View;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Parallel uploads through RepositoryStorage, all of them to the same file, like the shared files of
+ * a multi-module build, or each to its own. Writes of the same file used to wait for each other in 2s steps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class StorageContentionBenchmark {
+    private static final int UPLOADS = 8;
+
+    @Param({ "same", "distinct" })
+    public String paths;
+
+    private final byte[] artifact = new byte[16 * 1024];
+    private final AtomicInteger uploads = new AtomicInteger();
+    private File root;
+    private ExecutorService executor;
+    private IRepository repo;
+    private RepositoryStorage storage;
+
+    @Setup
+    public void setup() throws Exception {
+        this.root = Files.createTempDirectory("reposilite-storage").toFile();
+        this.executor = Executors.newFixedThreadPool(4);
+
+        IRepositoryManager manager = IRepositoryManager.builder()
+            .dir(root)
+            .executor(executor)
+            .repo("main", repo -> {})
+            .build();
+
+        this.repo = manager.getRepo("main");
+        this.storage = new RepositoryStorage(manager, executor);
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        executor.shutdownNow();
+        FileUtils.deleteDirectory(root);
+    }
+
+    @State(Scope.Thread)
+    public static class Upload {
+        private String path;
+
+        @Setup
+        public void setup(StorageContentionBenchmark benchmark) {
+            this.path = "same".equals(benchmark.paths)
+                ? "group/artifact/1.0/artifact-1.0.jar"
+                : "group/artifact/1.0/artifact-1.0-" + benchmark.uploads.incrementAndGet() + ".jar";
+        }
+    }
+
+    @Benchmark
+    @Threads(UPLOADS)
+    public File upload(Upload upload) throws Exception {
+        return storage.storeFile(new ByteArrayInputStream(artifact), repo, upload.path, View.RELEASES).get();
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.utils;
+
+import org.apache.commons.io.FileUtils;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Serves an artifact over plain HTTP from an embedded Jetty, once through the zero copy
+ * transfer the lookup endpoint uses, and once through the buffered copy it used before.
+ * Time per request, so throughput is the size divided by the score.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FileTransferBenchmark {
+    @Param({ "1", "50", "500" })
+    public int sizeMb;
+
+    private final byte[] buffer = new byte[64 * 1024];
+    private File directory;
+    private File artifact;
+    private Server server;
+    private int port;
+
+    @Setup
+    public void setup() throws Exception {
+        this.directory = Files.createTempDirectory("reposilite-transfer").toFile();
+        this.artifact = new File(directory, "artifact.jar");
+
+        try (RandomAccessFile file = new RandomAccessFile(artifact, "rw")) {
+            file.setLength(sizeMb * 1024L * 1024L);
+        }
+
+        this.server = new Server(0);
+        server.setHandler(new AbstractHandler() {
+            @Override
+            public void handle(String target, Request base, HttpServletRequest request, HttpServletResponse response) throws IOException {
+                base.setHandled(true);
+                response.setContentLengthLong(artifact.length());
+
+                if ("/transfer".equals(target)) {
+                    OutputUtils.transferFile(artifact, response.getOutputStream());
+                } else {
+                    FileUtils.copyFile(artifact, response.getOutputStream());
+                }
+            }
+        });
+        server.start();
+        this.port = ((ServerConnector) server.getConnectors()[0]).getLocalPort();
+    }
+
+    @TearDown
+    public void teardown() throws Exception {
+        server.stop();
+        FileUtils.deleteDirectory(directory);
+    }
+
+    private long download(String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + port + path).openConnection();
+        long read = 0;
+
+        try (InputStream input = connection.getInputStream()) {
+            int count;
+            while ((count = input.read(buffer)) != -1)
+                read += count;
+        }
+
+        return read;
+    }
+
+    @Benchmark
+    public long transfer() throws IOException {
+        return download("/transfer");
+    }
+
+    @Benchmark
+    public long copy() throws IOException {
+        return download("/copy");
+    }
+}
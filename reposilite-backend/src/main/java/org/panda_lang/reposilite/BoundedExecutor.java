@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed size pool with a bounded queue, that rejects work instead of growing when both are full.
+ * Threads are named after the pool and die off when idle, and it keeps count of what it rejected
+ * so the state of every pool can be shown by the status command.
+ */
+public final class BoundedExecutor extends ThreadPoolExecutor {
+
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final String name;
+    private final int queueSize;
+    private final AtomicLong rejected = new AtomicLong();
+
+    /**
+     * @param name name of the pool, used for its threads
+     * @param threads maximum amount of threads
+     * @param queueSize maximum amount of tasks waiting for a thread, 0 to reject as soon as all threads are busy
+     */
+    public BoundedExecutor(String name, int threads, int queueSize) {
+        super(Math.max(1, threads), Math.max(1, threads), KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, createQueue(queueSize), new NamedThreadFactory(name));
+        this.name = name;
+        this.queueSize = Math.max(0, queueSize);
+        allowCoreThreadTimeOut(true);
+    }
+
+    private static BlockingQueue<Runnable> createQueue(int queueSize) {
+        return queueSize > 0 ? new LinkedBlockingQueue<>(queueSize) : new SynchronousQueue<>();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        try {
+            super.execute(command);
+        } catch (RejectedExecutionException exception) {
+            rejected.incrementAndGet();
+            throw exception;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    public int getQueuedCount() {
+        return getQueue().size();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    @Override
+    public String toString() {
+        return name + " [active: " + getActiveCount() + "/" + getMaximumPoolSize()
+            + ", queued: " + getQueuedCount() + "/" + queueSize
+            + ", completed: " + getCompletedTaskCount()
+            + ", rejected: " + getRejectedCount() + "]";
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger count = new AtomicInteger();
+
+        private NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            return new Thread(runnable, "Reposilite " + name + " #" + count.incrementAndGet());
+        }
+    }
+
+}
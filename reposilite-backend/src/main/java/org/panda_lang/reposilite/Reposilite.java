@@ -22,8 +22,10 @@ import org.panda_lang.reposilite.config.ConfigurationLoader;
 import org.panda_lang.reposilite.console.Console;
 import org.panda_lang.reposilite.console.ConsoleConfiguration;
 import org.panda_lang.reposilite.error.FailureService;
+import org.panda_lang.reposilite.repository.ApacheUpstreamTransport;
 import org.panda_lang.reposilite.repository.IRepository;
 import org.panda_lang.reposilite.repository.IRepositoryManager;
+import org.panda_lang.reposilite.repository.UpstreamTransport;
 import org.panda_lang.reposilite.stats.StatsConfiguration;
 import org.panda_lang.reposilite.stats.StatsService;
 import org.panda_lang.reposilite.utils.RunUtils;
@@ -38,9 +40,6 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
-import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
 
@@ -49,8 +48,12 @@ public final class Reposilite {
     private static final Logger LOGGER = LoggerFactory.getLogger("Reposilite");
 
     private final AtomicBoolean alive;
-    private final ExecutorService ioService;
+    private final BoundedExecutor proxyService;
+    private final BoundedExecutor raceService;
+    private final BoundedExecutor storageService;
+    private final BoundedExecutor statsExecutor;
     private final ScheduledExecutorService retryService;
+    private final UpstreamTransport upstreamTransport;
     private final File configurationFile;
     private final File workingDirectory;
     private final boolean testEnvEnabled;
@@ -72,19 +75,24 @@ public final class Reposilite {
         ValidationUtils.notNull(workingDirectory, "Working directory cannot be null. To use default working directory, provide empty string");
 
         this.alive = new AtomicBoolean(false);
-        this.ioService = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1, TimeUnit.SECONDS, new SynchronousQueue<>());
-        this.retryService = Executors.newSingleThreadScheduledExecutor();
         this.configurationFile = new File(configurationFile);
         this.workingDirectory = new File(workingDirectory);
         this.testEnvEnabled = testEnv;
 
         this.config = ConfigurationLoader.tryLoad(configurationFile, workingDirectory);
+        this.proxyService = new BoundedExecutor("proxy", config.proxyThreads, config.proxyQueueSize);
+        // Never queues, a raced lookup asks the proxy itself instead of waiting for a thread
+        this.raceService = new BoundedExecutor("race", config.proxyThreads * 2, 0);
+        this.storageService = new BoundedExecutor("storage", config.storageThreads, config.storageQueueSize);
+        this.statsExecutor = new BoundedExecutor("stats", config.statsThreads, config.statsQueueSize);
+        this.retryService = Executors.newSingleThreadScheduledExecutor();
+        this.upstreamTransport = new ApacheUpstreamTransport(config.proxyMaxConnections, config.proxyMaxConnectionsPerHost, config.proxyKeepAlive);
         this.failureService = new FailureService();
         this.executor = new ReposiliteExecutor(testEnvEnabled, failureService);
 
-        this.statsService = new StatsService(workingDirectory, failureService, ioService, retryService);
+        this.statsService = new StatsService(workingDirectory, failureService, statsExecutor, retryService);
 
-        this.repoManager = buildRepoManager(config, new File(this.workingDirectory, "repositories"), this.ioService, this.retryService, this.failureService::throwException);
+        this.repoManager = buildRepoManager(config, new File(this.workingDirectory, "repositories"), this.storageService, this.proxyService, this.raceService, this.retryService, this.upstreamTransport, this.failureService::throwException);
         this.authManager = buildAuthManager(config, this.workingDirectory, this.repoManager);
 
         this.reactiveHttpServer = new ReposiliteHttpServer(this);
@@ -92,12 +100,18 @@ public final class Reposilite {
         this.shutdownHook = new Thread(RunUtils.ofChecked(failureService, this::shutdown));
     }
 
-    private static IRepositoryManager buildRepoManager(Configuration config, File dir, ExecutorService exec, ScheduledExecutorService sched, BiConsumer<String, Exception> error) {
+    private static IRepositoryManager buildRepoManager(Configuration config, File dir, ExecutorService exec, ExecutorService proxy, ExecutorService race, ScheduledExecutorService sched, UpstreamTransport transport, BiConsumer<String, Exception> error) {
         IRepositoryManager.Builder builder = IRepositoryManager.builder()
             .dir(dir)
             .quota(config.diskQuota)
+            .verifyDiskUsage(config.verifyDiskUsage)
+            .metadataCache(config.metadataCacheSize)
             .executor(exec)
+            .proxyExecutor(proxy)
+            .raceExecutor(race)
+            .circuitBreaker(config.proxyCircuitFailures, config.proxyCircuitCooldown)
             .scheduled(sched)
+            .transport(transport)
             .error(error)
             ;
 
@@ -107,6 +121,11 @@ public final class Reposilite {
                 .readOnly(!repc.allowUploads)
                 .browseable(repc.browseable)
                 .delegate(repc.delegate)
+                .proxyStrategy(IRepository.ProxyStrategy.of(repc.proxyStrategy))
+                .hedgeDelay(repc.hedgeDelay)
+                .index(repc.index)
+                .negativeCacheTtl(repc.negativeCacheTtl)
+                .revalidateTtl(repc.revalidateTtl)
                 .quota(repc.diskQuota);
 
             if (repc.prefixes != null)
@@ -202,8 +221,13 @@ public final class Reposilite {
 
         reactiveHttpServer.stop();
         statsService.saveStats();
-        ioService.shutdownNow();
+        proxyService.shutdownNow();
+        raceService.shutdownNow();
+        storageService.shutdownNow();
+        repoManager.save();
+        statsExecutor.shutdownNow();
         retryService.shutdownNow();
+        upstreamTransport.close();
         console.stop();
         executor.stop();
     }
@@ -248,8 +272,24 @@ public final class Reposilite {
         return retryService;
     }
 
-    public ExecutorService getIoService() {
-        return ioService;
+    public BoundedExecutor getProxyService() {
+        return proxyService;
+    }
+
+    public BoundedExecutor getRaceService() {
+        return raceService;
+    }
+
+    public BoundedExecutor getStorageService() {
+        return storageService;
+    }
+
+    public BoundedExecutor getStatsExecutor() {
+        return statsExecutor;
+    }
+
+    public UpstreamTransport getUpstreamTransport() {
+        return upstreamTransport;
     }
 
     public File getWorkingDirectory() {
@@ -16,6 +16,7 @@
 
 package org.panda_lang.reposilite;
 
+import org.panda_lang.reposilite.RouteTable.Route;
 import org.panda_lang.reposilite.auth.IAuthManager;
 import org.panda_lang.reposilite.auth.Session;
 import org.panda_lang.reposilite.repository.IRepository;
@@ -32,16 +33,19 @@ import io.javalin.http.Context;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Supplier;
 
 public final class ReposiliteContext {
     public static ReposiliteContext create(IAuthManager auth, IRepositoryManager repoManager, String ipHeader, Context context) {
-        Map<String, String> headers = context.headerMap(); // this can only be called once with a valid result for some reason, so cache it here
+        return create(auth, RouteTable.of(repoManager), ipHeader, context);
+    }
+
+    static ReposiliteContext create(IAuthManager auth, RouteTable routes, String ipHeader, Context context) {
         String realIp = context.header(ipHeader);
         String address = StringUtils.isEmpty(realIp) ? context.req.getRemoteAddr() : realIp;
-        Result<Session, String> session = auth.getSession(headers);
 
         String uri = context.req.getRequestURI();
         if (uri.startsWith("/api/"))
@@ -52,46 +56,13 @@ public final class ReposiliteContext {
         View view = View.ALL;
         String filepath = null;
         String sanitized = sanitize(uri);
-        List<IRepository> repos = new ArrayList<>();
+        List<IRepository> repos = Collections.emptyList();
 
         if (sanitized != null) {
-            int idx = sanitized.indexOf('/');
-            if (idx == -1) {
-                filepath = sanitized;
-                repos.addAll(repoManager.getRepos());
-            } else {
-                String name = sanitized.substring(0, idx);
-                if ("releases".equals(name)) {
-                    view = View.RELEASES;
-                    repos.addAll(repoManager.getRepos());
-                    filepath = sanitized.substring(idx + 1);
-                } else if ("snapshots".equals(name)) {
-                    view = View.SNAPSHOTS;
-                    repos.addAll(repoManager.getRepos());
-                    filepath = sanitized.substring(idx + 1);
-                } else {
-                    int hidx = name.indexOf('-');
-                    if (hidx > 1) {
-                        String view_name = name.substring(hidx + 1);
-                        if ("releases".equals(view_name)) {
-                            view = View.RELEASES;
-                            name = name.substring(0, hidx);
-                        } else if ("snapshots".equals(view_name)) {
-                            view = View.SNAPSHOTS;
-                            name = name.substring(0, hidx);
-                        }
-                    }
-
-                    IRepository repo = repoManager.getRepo(name);
-                    if (repo == null) {
-                        repos.addAll(repoManager.getRepos());
-                        filepath = sanitized;
-                    } else {
-                        repos.add(repo);
-                        filepath = sanitized.substring(idx + 1);
-                    }
-                }
-            }
+            Route route = routes.resolve(sanitized);
+            view = route.view;
+            repos = route.repos;
+            filepath = route.strip ? sanitized.substring(sanitized.indexOf('/') + 1) : sanitized;
         }
 
         return new ReposiliteContext(
@@ -100,11 +71,10 @@ public final class ReposiliteContext {
             filepath,
             context.method(),
             address,
-            headers,
+            context::headerMap,
             context.req::getInputStream,
             repos,
             auth,
-            session,
             view
         );
     }
@@ -170,12 +140,14 @@ public final class ReposiliteContext {
     private final String filepath;
     private final String method;
     private final String address;
-    private final Map<String, String> header;
+    private final Supplier<Map<String, String>> headerSupplier;
     private final ThrowingSupplier<InputStream, IOException> input;
     private final List<IRepository> repos;
     private final IAuthManager auth;
-    private final Result<Session, String> session;
     private final View view;
+    // Resolved on first use, most anonymous requests never need either of them
+    private Map<String, String> header;
+    private Result<Session, String> session;
     private ThrowingConsumer<OutputStream, IOException> result;
 
     private ReposiliteContext(
@@ -184,11 +156,10 @@ public final class ReposiliteContext {
             String filepath,
             String method,
             String address,
-            Map<String, String> header,
+            Supplier<Map<String, String>> headerSupplier,
             ThrowingSupplier<InputStream, IOException> input,
             List<IRepository> repos,
             IAuthManager auth,
-            Result<Session, String> session,
             View view) {
 
         this.uri = uri;
@@ -196,11 +167,10 @@ public final class ReposiliteContext {
         this.filepath = filepath;
         this.method = method;
         this.address = address;
-        this.header = header;
+        this.headerSupplier = headerSupplier;
         this.input = input;
         this.repos = repos;
         this.auth = auth;
-        this.session = session;
         this.view = view;
     }
 
@@ -217,6 +187,8 @@ public final class ReposiliteContext {
     }
 
     public Map<String, String> headers() {
+        if (header == null)
+            header = headerSupplier.get(); // this can only be called once with a valid result for some reason, so cache it here
         return header;
     }
 
@@ -249,11 +221,13 @@ public final class ReposiliteContext {
     }
 
     public Result<Session, String> session() {
+        if (session == null)
+            session = auth.getSession(headers());
         return session;
     }
 
     public Result<Session, String> session(String url) {
-        return session.flatMap(s -> s.hasPermissionTo(url) ? Result.ok(s) : Result.error("Unauthorized access attempt"));
+        return session().flatMap(s -> s.hasPermissionTo(url) ? Result.ok(s) : Result.error("Unauthorized access attempt"));
     }
 
     public View view() {
@@ -51,11 +51,12 @@ public final class ReposiliteHttpServer {
             .before(ctx -> reposilite.getStatsService().record(ctx.req.getRequestURI()))
             .get("/js/app.js", new FrontendHandler(frontend));
 
+        RouteTable routes = RouteTable.of(reposilite.getRepos());
         IJavalinContext jctx = new IJavalinContext() {
             @Override public Javalin javalin() { return javalin; }
             @Override public boolean apiEnabled() { return config.apiEnabled; }
             @Override public Handler authedToHandler(IAuthedHandler child) {
-                return ctx -> child.handle(ctx, ReposiliteContext.create(auth(), repos(), config.forwardedIp, ctx));
+                return ctx -> child.handle(ctx, ReposiliteContext.create(auth(), routes, config.forwardedIp, ctx));
             }
             @Override public IAuthManager auth() { return reposilite.getAuth(); }
             @Override public IRepositoryManager repos() { return reposilite.getRepos(); }
@@ -0,0 +1,129 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite;
+
+import org.panda_lang.reposilite.repository.IRepository;
+import org.panda_lang.reposilite.repository.IRepository.View;
+import org.panda_lang.reposilite.repository.IRepositoryManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Precomputed mapping of the first path segment of a request to the repositories and view it targets.
+ * Built once from the repository manager so resolving a request doesn't need to allocate new lists.
+ *
+ * Supported segments:
+ *   releases/, snapshots/              All repositories, in the specified view
+ *   {name}/                            Single repository, all views
+ *   {name}-releases/, {name}-snapshots/ Single repository, in the specified view
+ * Anything else is a path in all repositories.
+ *
+ * The same as the parser it replaced, the view is whatever follows the first hyphen, if that's after at least two
+ * characters. So my-repo-releases/ is a path in all repositories, and a repository named main-releases can't be
+ * reached at all, main-releases/ is the releases of main.
+ */
+final class RouteTable {
+    private final Route all;
+    private final Route allReleases;
+    private final Route allSnapshots;
+    private final Map<String, Route> routes = new HashMap<>();
+
+    private RouteTable(IRepositoryManager repoManager) {
+        List<IRepository> repos = Collections.unmodifiableList(new ArrayList<>(repoManager.getRepos()));
+        this.all = new Route(repos, View.ALL, false);
+        this.allReleases = new Route(repos, View.RELEASES, false);
+        this.allSnapshots = new Route(repos, View.SNAPSHOTS, false);
+
+        for (IRepository repo : repos) {
+            List<IRepository> single = Collections.singletonList(repo);
+            String name = repo.getName();
+
+            if (viewOf(name) == null)
+                this.routes.put(name, new Route(single, View.ALL, true));
+
+            // Only if it's the first hyphen, and after at least two characters
+            if (name.length() > 1 && name.indexOf('-') == -1) {
+                this.routes.put(name + "-releases", new Route(single, View.RELEASES, true));
+                this.routes.put(name + "-snapshots", new Route(single, View.SNAPSHOTS, true));
+            }
+        }
+
+        // Before any repository of the same name
+        this.routes.put("releases", new Route(repos, View.RELEASES, true));
+        this.routes.put("snapshots", new Route(repos, View.SNAPSHOTS, true));
+    }
+
+    // The view a segment asks for with its suffix, or null if it has none
+    private static View viewOf(String segment) {
+        int hidx = segment.indexOf('-');
+        if (hidx <= 1)
+            return null;
+
+        String suffix = segment.substring(hidx + 1);
+        if ("releases".equals(suffix))
+            return View.RELEASES;
+        if ("snapshots".equals(suffix))
+            return View.SNAPSHOTS;
+        return null;
+    }
+
+    static RouteTable of(IRepositoryManager repoManager) {
+        return new RouteTable(repoManager);
+    }
+
+    /*
+     * Finds the route for a sanitized path. Unknown first segments resolve to all repositories,
+     * but still honor a -releases/-snapshots suffix as the view.
+     */
+    Route resolve(String sanitized) {
+        int idx = sanitized.indexOf('/');
+        if (idx == -1)
+            return all;
+
+        Route route = routes.get(sanitized.substring(0, idx));
+        if (route != null)
+            return route;
+
+        int hidx = sanitized.indexOf('-');
+        if (hidx <= 1 || hidx >= idx)
+            return all;
+
+        int length = idx - hidx - 1;
+        if (length == 8 && sanitized.startsWith("releases", hidx + 1))
+            return allReleases;
+        if (length == 9 && sanitized.startsWith("snapshots", hidx + 1))
+            return allSnapshots;
+        return all;
+    }
+
+    static final class Route {
+        final List<IRepository> repos;
+        final View view;
+        // If the first segment is consumed by this route, and not part of the file path
+        final boolean strip;
+
+        private Route(List<IRepository> repos, View view, boolean strip) {
+            this.repos = repos;
+            this.view = view;
+            this.strip = strip;
+        }
+    }
+}
@@ -85,10 +85,16 @@ final class Authenticator {
         }
 
         Token token = tokenValue.get();
-        boolean authorized = TokenService.B_CRYPT_TOKENS_ENCODER.matches(values[1], token.getToken());
+        CredentialCache cache = tokenService.getCredentialCache();
 
-        if (!authorized) {
-            return Result.error("Invalid authorization credentials");
+        if (!cache.isVerified(values[0], values[1], token)) {
+            boolean authorized = TokenService.B_CRYPT_TOKENS_ENCODER.matches(values[1], token.getToken());
+
+            if (!authorized) {
+                return Result.error("Invalid authorization credentials");
+            }
+
+            cache.verified(values[0], values[1], token);
         }
 
         return Result.ok(new Session(token, getRepositories(token)));
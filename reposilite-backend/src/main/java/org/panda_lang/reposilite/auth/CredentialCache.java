@@ -0,0 +1,101 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.auth;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Remembers credentials that already passed a BCrypt check, so repeated requests
+ * from the same client (every .pom, .jar, .sha1, .md5 ...) don't pay for it again.
+ *
+ * Entries are keyed by a SipHash of alias + secret using a random per-process key,
+ * so the raw secret is never kept in memory and the keys can't be precomputed.
+ */
+final class CredentialCache {
+    private static final int MAX_ENTRIES = 1024;
+    private static final long EXPIRE_MINUTES = 5;
+
+    private final HashFunction hash;
+    private final Cache<HashCode, Token> cache;
+
+    CredentialCache() {
+        this(MAX_ENTRIES, EXPIRE_MINUTES, TimeUnit.MINUTES);
+    }
+
+    CredentialCache(int maxEntries, long expire, TimeUnit unit) {
+        SecureRandom random = new SecureRandom();
+        this.hash = Hashing.sipHash24(random.nextLong(), random.nextLong());
+        this.cache = CacheBuilder.newBuilder()
+            .maximumSize(maxEntries)
+            .expireAfterWrite(expire, unit)
+            .recordStats()
+            .build();
+    }
+
+    private HashCode key(String alias, String secret) {
+        return hash.newHasher()
+            .putString(alias, StandardCharsets.UTF_8)
+            .putChar(':')
+            .putString(secret, StandardCharsets.UTF_8)
+            .hash();
+    }
+
+    /*
+     * Returns true if this exact alias/secret pair was verified against the given token before.
+     * The token instance must match, so a regenerated token never hits a stale entry.
+     */
+    boolean isVerified(String alias, String secret, Token token) {
+        return this.cache.getIfPresent(key(alias, secret)) == token;
+    }
+
+    void verified(String alias, String secret, Token token) {
+        this.cache.put(key(alias, secret), token);
+    }
+
+    void invalidate(Token token) {
+        this.cache.asMap().values().removeIf(value -> value == token);
+    }
+
+    void invalidateAll() {
+        this.cache.invalidateAll();
+    }
+
+    long getHitCount() {
+        return this.cache.stats().hitCount();
+    }
+
+    long getMissCount() {
+        return this.cache.stats().missCount();
+    }
+
+    long size() {
+        return this.cache.size();
+    }
+
+    @Override
+    public String toString() {
+        return "CredentialCache[size: " + size() + ", hits: " + getHitCount() + ", misses: " + getMissCount() + "]";
+    }
+}
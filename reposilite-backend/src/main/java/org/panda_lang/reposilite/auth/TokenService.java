@@ -35,6 +35,7 @@ final class TokenService {
     public static final BCryptPasswordEncoder B_CRYPT_TOKENS_ENCODER = new BCryptPasswordEncoder();
 
     private final Map<String, Token> tokens = new HashMap<>();
+    private final CredentialCache credentials = new CredentialCache();
     private final TokenStorage database;
 
     TokenService(File dir) {
@@ -58,6 +59,7 @@ final class TokenService {
         return getToken(alias)
                 .map(token -> {
                     tokenConsumer.accept(token);
+                    credentials.invalidate(token);
 
                     try {
                         saveTokens();
@@ -71,12 +73,17 @@ final class TokenService {
     }
 
     Token addToken(Token token) {
-        this.tokens.put(token.getAlias(), token);
+        Token previous = this.tokens.put(token.getAlias(), token);
+        if (previous != null)
+            credentials.invalidate(previous);
         return token;
     }
 
     Token deleteToken(String alias) {
-        return tokens.remove(alias);
+        Token token = tokens.remove(alias);
+        if (token != null)
+            credentials.invalidate(token);
+        return token;
     }
 
     Option<Token> getToken(String alias) {
@@ -87,6 +94,10 @@ final class TokenService {
         return tokens.values();
     }
 
+    CredentialCache getCredentialCache() {
+        return credentials;
+    }
+
     private final class TokenStorage {
         private final TokenService tokenService;
         private final File tokensFile;
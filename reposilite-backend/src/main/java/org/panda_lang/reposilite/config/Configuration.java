@@ -64,12 +64,46 @@ public final class Configuration {
     @Description("# Control the maximum amount of data assigned to Reposilite instance")
     @Description("# Supported formats: 90%, 500MB, 10GB")
     public String diskQuota = "10GB";
+    @Description("# The disk usage of every repository is remembered in its .usage file, so it doesn't have to be walked on every start")
+    @Description("# Walk them anyway, at low priority, to correct it. They're always walked after an unclean shutdown")
+    public Boolean verifyDiskUsage = false;
+    @Description("# Memory used to keep maven-metadata.xml files merged from multiple repositories,")
+    @Description("# half of it for the merged files and half for the parsed files they were merged from")
+    @Description("# Supported formats: 512KB, 32MB")
+    public String metadataCacheSize = "32MB";
 
     @Description("# How long Reposilite can wait for establishing the connection with a remote host. (In seconds)")
     public Integer proxyConnectTimeout = 3;
     @Description("# How long Reposilite can read data from remote proxy. (In seconds)")
     @Description("# Increasing this value may be required in case of proxying slow remote repositories.")
     public Integer proxyReadTimeout = 15;
+    @Description("# How long the answer of a proxied repository to a HEAD request is reused for the same file. (In seconds, 0 to disable)")
+    @Description("# Build tools send lots of them to check if their files are up to date.")
+    public Integer proxyHeadCacheTtl = 60;
+    @Description("# Failures in a row after which a proxied repository is skipped, instead of waiting on it for every request. 0 to never skip.")
+    @Description("# It is also skipped when more than half of its recent requests failed.")
+    public Integer proxyCircuitFailures = 5;
+    @Description("# How long a failing proxied repository is skipped, before a single request checks if it's back. (In seconds)")
+    public Integer proxyCircuitCooldown = 30;
+    @Description("# Connections to proxied repositories are kept open and reused by the next request.")
+    @Description("# Maximum amount of connections to all proxied repositories together, and to a single one.")
+    public Integer proxyMaxConnections = 64;
+    public Integer proxyMaxConnectionsPerHost = 16;
+    @Description("# How long an unused connection to a proxied repository is kept open. (In seconds)")
+    public Integer proxyKeepAlive = 30;
+
+    // Thread pools
+    @Description("")
+    @Description("# Threads used to fetch artifacts from proxied repositories, and how many fetches may wait for one of them.")
+    @Description("# Requests above that are answered with 503 and a Retry-After header, instead of starting more threads.")
+    public Integer proxyThreads = 16;
+    public Integer proxyQueueSize = 256;
+    @Description("# Threads used to store files, and how many writes may wait for one of them.")
+    public Integer storageThreads = 4;
+    public Integer storageQueueSize = 256;
+    @Description("# Threads used to load and save statistics, and how many tasks may wait for one of them.")
+    public Integer statsThreads = 1;
+    public Integer statsQueueSize = 16;
 
     // Frontend properties
     @Description("")
@@ -111,11 +145,34 @@ public final class Configuration {
     "#     # Files not found locally will be attempted to be found",
     "#     # in the following reposiories. And cached locally.",
     "#     proxies: []",
+    "#     # How to ask the proxies for a file. 'sequential' asks them one",
+    "#     # after another, 'parallel' asks all of them at once and uses",
+    "#     # the first that has it, 'hedged' asks the next one as well",
+    "#     # when the previous takes longer than it usually does.",
+    "#     proxyStrategy: \"sequential\"",
+    "#     # Milliseconds to wait for a proxy before also asking the next",
+    "#     # one, when using 'hedged'. 0 to use the 95th percentile of",
+    "#     # how long that proxy took to answer recently.",
+    "#     hedgeDelay: 0",
     "#     # Repository name to delegate requests to, if this one does not ",
     "#     # have the requested file. This can not be used with 'proxies'.",
     "#     # This is mainly intended to allow proxied files to be stored in",
     "#     # a seperate repo for organiztion.",
     "#     delegate: \"\"",
+    "#     # Keep an in memory index of every file in this repository,",
+    "#     # built in the background at startup. Makes lookups, and misses",
+    "#     # especially, avoid the disk at the cost of memory per file.",
+    "#     # Files changed on disk outside of Reposilite will not be seen.",
+    "#     index: false",
+    "#     # How many seconds to remember that a file could not be found,",
+    "#     # here or in any of the proxies. Build tools ask for lots of",
+    "#     # files that don't exist, and this keeps them off the disk and",
+    "#     # upstream. Deploying the file clears it. 0 to disable.",
+    "#     negativeCacheTtl: 30",
+    "#     # How many seconds a proxied maven-metadata.xml or SNAPSHOT file",
+    "#     # is used before its proxy is asked if it changed. The stored",
+    "#     # file is still served while the proxy is asked. 0 to never ask.",
+    "#     revalidateTtl: 300",
     "#   }",
     "# }"
     })
@@ -130,6 +187,11 @@ public final class Configuration {
         public Boolean allowUploads = true;
         public String diskQuota = "";
         public List<String> proxies = Collections.emptyList();
+        public String proxyStrategy = "sequential";
+        public Integer hedgeDelay = 0;
         public String delegate = "";
+        public Boolean index = false;
+        public Integer negativeCacheTtl = 30;
+        public Integer revalidateTtl = 300;
     }
 }
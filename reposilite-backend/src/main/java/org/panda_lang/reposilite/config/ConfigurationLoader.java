@@ -28,6 +28,7 @@ import net.dzikoysk.cdn.serialization.Composer;
 import org.panda_lang.reposilite.Reposilite;
 import org.panda_lang.reposilite.ReposiliteConstants;
 import org.panda_lang.reposilite.config.Configuration.Repository;
+import org.panda_lang.reposilite.repository.IRepository.ProxyStrategy;
 import org.panda_lang.reposilite.utils.FilesUtils;
 import org.panda_lang.utilities.commons.ClassUtils;
 import org.panda_lang.utilities.commons.FileUtils;
@@ -171,6 +172,13 @@ public final class ConfigurationLoader {
                     throw new IllegalStateException("Repository " + name + " specified a delegate, and proxies. Only one is allowed");
             }
 
+            repo.proxyStrategy = repo.proxyStrategy == null || repo.proxyStrategy.trim().isEmpty() ? "sequential" : repo.proxyStrategy.trim();
+            try {
+                ProxyStrategy.of(repo.proxyStrategy);
+            } catch (IllegalArgumentException exception) {
+                throw new IllegalStateException("Repository " + name + ": " + exception.getMessage());
+            }
+
             for (int index = 0; index < repo.prefixes.size(); index++) {
                 String prefix = FilesUtils.trim(repo.prefixes.get(index), '/');
                 repo.prefixes.set(index, prefix + '/');
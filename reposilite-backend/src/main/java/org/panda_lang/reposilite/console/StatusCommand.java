@@ -18,6 +18,7 @@ package org.panda_lang.reposilite.console;
 
 import org.panda_lang.reposilite.Reposilite;
 import org.panda_lang.reposilite.ReposiliteConstants;
+import org.panda_lang.reposilite.repository.UpstreamDto;
 import org.panda_lang.reposilite.utils.TimeUtils;
 import org.panda_lang.utilities.commons.IOUtils;
 import org.panda_lang.utilities.commons.console.Effect;
@@ -43,8 +44,25 @@ final class StatusCommand implements ReposiliteCommand {
         response.add("  Uptime:  " + TimeUtils.format(reposilite.getUptime() / 1000.0 / 60.0) + "min");
         response.add("  Memory:  " + getMemoryUsage());
         response.add("  Disk:    " + reposilite.getRepos().getQuota());
-        // Don't care, response.add("  Cached metadata: " + reposilite.getMetadataService().getCacheSize());
+        response.add("  Disk scan: " + reposilite.getRepos().getDiskUsageScan());
+        response.add("  Metadata: " + reposilite.getRepos().getMetadataService());
         response.add("  Errrors: " + reposilite.getFailureService().getFailures().size());
+        response.add("  Threads: " + reposilite.getProxyService());
+        response.add("           " + reposilite.getRaceService());
+        response.add("           " + reposilite.getStorageService());
+        response.add("           " + reposilite.getStatsExecutor());
+        response.add("  Proxy connections: " + reposilite.getUpstreamTransport().getStats());
+
+        List<UpstreamDto> upstreams = reposilite.getRepos().getUpstreams();
+        if (!upstreams.isEmpty()) {
+            response.add("  Upstreams:");
+            for (UpstreamDto upstream : upstreams) {
+                response.add("    " + upstream.getUrl() + " " + getCircuit(upstream.getCircuit())
+                    + " (errors: " + Math.round(upstream.getErrorRate() * 100) + "%, p50: " + getLatency(upstream.getP50())
+                    + ", p95: " + getLatency(upstream.getP95()) + ", p99: " + getLatency(upstream.getP99())
+                    + ", requests: " + upstream.getRequests() + ", skipped: " + upstream.getSkipped() + ")");
+            }
+        }
         // TODO: Move to our versioon checking system
         //response.add("  Latest version of reposilite: " + latestVersion);
 
@@ -60,6 +78,14 @@ final class StatusCommand implements ReposiliteCommand {
         return (ReposiliteConstants.VERSION.equals(latest) ? Effect.GREEN : Effect.RED_UNDERLINED) + latest + Effect.RESET;
     }
 
+    private String getCircuit(String circuit) {
+        return ("closed".equals(circuit) ? Effect.GREEN : Effect.RED) + circuit + Effect.RESET;
+    }
+
+    private String getLatency(long millis) {
+        return millis < 0 ? "?" : millis + "ms";
+    }
+
     private String getMemoryUsage() {
         return TimeUtils.format((Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory()) / 1024.0D / 1024.0D) + "M";
     }
@@ -17,10 +17,14 @@
 package org.panda_lang.reposilite.error;
 
 import io.javalin.http.Context;
+import org.apache.http.HttpStatus;
 import org.panda_lang.utilities.commons.function.Result;
 
 public final class ResponseUtils {
 
+    // Seconds clients are asked to wait before retrying when we're overloaded
+    public static final String RETRY_AFTER = "5";
+
     private ResponseUtils() { }
 
     public static <T> Result<T, ErrorDto> error(int status, String messge) {
@@ -37,9 +41,16 @@ public final class ResponseUtils {
     }
 
     public static Context errorResponse(Context context, ErrorDto error) {
+        retryAfter(context, error);
         return context
                 .status(error.getStatus())
                 .json(error);
     }
 
+    public static void retryAfter(Context context, ErrorDto error) {
+        if (error.getStatus() == HttpStatus.SC_SERVICE_UNAVAILABLE) {
+            context.header("Retry-After", RETRY_AFTER);
+        }
+    }
+
 }
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.io.EmptyInputStream;
+import org.apache.http.pool.PoolStats;
+import org.apache.http.util.EntityUtils;
+import org.panda_lang.reposilite.ReposiliteConstants;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Apache HttpClient with a pool of keep-alive connections per host, so misses don't pay
+ * for a new connection and TLS handshake with the upstream every time.
+ * HTTP/1.1 only, HttpClient 4 can't do HTTP/2 and this runs on Java 8.
+ */
+public final class ApacheUpstreamTransport implements UpstreamTransport {
+
+    // Bodies up to this size are read to the end, so their connection goes back to the pool
+    private static final long MAX_DRAIN_SIZE = 64 * 1024;
+    // Idle pooled connections are checked before reuse after this, the upstream may have closed them
+    private static final int VALIDATE_AFTER_INACTIVITY = 2000;
+
+    private final PoolingHttpClientConnectionManager connections;
+    private final CloseableHttpClient client;
+
+    /**
+     * @param maxConnections connections to all upstreams together
+     * @param maxConnectionsPerHost connections to a single upstream
+     * @param keepAlive seconds an idle connection is kept for the next request
+     */
+    public ApacheUpstreamTransport(int maxConnections, int maxConnectionsPerHost, int keepAlive) {
+        // Not the constructor taking a time to live, that retires connections after it even if they are never idle
+        this.connections = new PoolingHttpClientConnectionManager();
+        this.connections.setMaxTotal(Math.max(1, maxConnections));
+        this.connections.setDefaultMaxPerRoute(Math.max(1, Math.min(maxConnections, maxConnectionsPerHost)));
+        this.connections.setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
+
+        long maxIdle = TimeUnit.SECONDS.toMillis(Math.max(1, keepAlive));
+
+        this.client = HttpClients.custom()
+            .setConnectionManager(connections)
+            .setUserAgent("Reposilite/" + ReposiliteConstants.VERSION)
+            .disableContentCompression() // Artifacts are stored as they're sent, and are mostly compressed already
+            .disableCookieManagement()
+            .disableAutomaticRetries()
+            // As long as the upstream says it keeps the connection, but never longer than we would
+            .setKeepAliveStrategy((response, context) -> {
+                long announced = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                return announced > 0 ? Math.min(announced, maxIdle) : maxIdle;
+            })
+            .evictExpiredConnections()
+            .evictIdleConnections(maxIdle, TimeUnit.MILLISECONDS)
+            .build();
+    }
+
+    @Override
+    public Request get(String url, int connectTimeout, int readTimeout) {
+        return request(new HttpGet(url), url, connectTimeout, readTimeout);
+    }
+
+    @Override
+    public Request head(String url, int connectTimeout, int readTimeout) {
+        return request(new HttpHead(url), url, connectTimeout, readTimeout);
+    }
+
+    private Request request(HttpRequestBase request, String url, int connectTimeout, int readTimeout) {
+        request.setConfig(RequestConfig.custom()
+            .setConnectionRequestTimeout(connectTimeout)
+            .setConnectTimeout(connectTimeout)
+            .setSocketTimeout(readTimeout)
+            .build());
+
+        return new Request() {
+            @Override
+            public Request header(String name, String value) {
+                request.setHeader(name, value);
+                return this;
+            }
+
+            @Override
+            public Response execute() throws IOException {
+                return new ApacheResponse(url, client.execute(request));
+            }
+
+            @Override
+            public void abort() {
+                request.abort();
+            }
+
+            @Override
+            public boolean isAborted() {
+                return request.isAborted();
+            }
+        };
+    }
+
+    @Override
+    public Stats getStats() {
+        PoolStats stats = connections.getTotalStats();
+        return new Stats(stats.getLeased(), stats.getPending(), stats.getAvailable(), stats.getMax());
+    }
+
+    @Override
+    public void close() throws IOException {
+        client.close();
+    }
+
+    private static final class ApacheResponse implements Response {
+        private final String url;
+        private final CloseableHttpResponse response;
+
+        private ApacheResponse(String url, CloseableHttpResponse response) {
+            this.url = url;
+            this.response = response;
+        }
+
+        @Override
+        public String getUrl() {
+            return url;
+        }
+
+        @Override
+        public int getStatus() {
+            return response.getStatusLine().getStatusCode();
+        }
+
+        @Override
+        public String getHeader(String name) {
+            Header header = response.getFirstHeader(name);
+            return header == null ? null : header.getValue();
+        }
+
+        @Override
+        public long getContentLength() {
+            HttpEntity entity = response.getEntity();
+            if (entity != null)
+                return entity.getContentLength();
+
+            // No body, as with a HEAD, but the header still tells us how large the file is
+            String length = getHeader("Content-Length");
+            try {
+                return length == null ? -1 : Long.parseLong(length.trim());
+            } catch (NumberFormatException exception) {
+                return -1;
+            }
+        }
+
+        @Override
+        public InputStream getContent() throws IOException {
+            HttpEntity entity = response.getEntity();
+            return entity == null ? EmptyInputStream.INSTANCE : entity.getContent();
+        }
+
+        @Override
+        public void close() {
+            HttpEntity entity = response.getEntity();
+            long length = entity == null ? 0 : entity.getContentLength();
+
+            if (length >= 0 && length <= MAX_DRAIN_SIZE)
+                EntityUtils.consumeQuietly(entity);
+
+            try {
+                response.close(); // Closes the connection if the body is still unread
+            } catch (IOException ignored) { /* it's gone either way */ }
+        }
+    }
+
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import org.panda_lang.reposilite.Reposilite;
+import org.panda_lang.reposilite.utils.FilesUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * In memory index of every file and directory below a repository root, so lookups
+ * can answer exists/isDirectory/length/lastModified without touching the disk.
+ * Especially useful for misses, which otherwise stat every repo in a merged view.
+ *
+ * The index is filled by a background scan, until that finishes everything falls
+ * through to the filesystem. Files written through RepositoryStorage are refreshed
+ * as they are stored. Changes made to the disk behind our back are not seen.
+ */
+final class ArtifactIndex {
+    private final File root;
+    private final String rootPath;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    ArtifactIndex(File root) {
+        this.root = root;
+        this.rootPath = root.getPath();
+    }
+
+    File getFile(String path) {
+        return new IndexedFile(this, root, path);
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    int size() {
+        return entries.size();
+    }
+
+    void scan() {
+        long start = System.currentTimeMillis();
+        try {
+            Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    add(dir.toFile(), attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    String name = file.getFileName().toString();
+                    if (!name.endsWith(".lock") && !FilesUtils.isPartial(name))
+                        add(file.toFile(), attrs);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException exc) {
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            Reposilite.getLogger().error("Failed to index " + root + ", falling back to disk lookups", e);
+            return;
+        }
+        this.ready = true;
+        Reposilite.getLogger().info("Indexed " + entries.size() + " entries in " + root + " (" + (System.currentTimeMillis() - start) + "ms)");
+    }
+
+    private void add(File file, BasicFileAttributes attrs) {
+        String key = key(file);
+        if (key != null) // Anything stored while we were scanning is newer than what we just read
+            entries.putIfAbsent(key, new Entry(attrs.isDirectory(), attrs.isDirectory() ? 0 : attrs.size(), attrs.lastModifiedTime().toMillis()));
+    }
+
+    /*
+     * Re-reads the file from disk, as well as any parent directories that may have been created with it.
+     */
+    void refresh(File file) {
+        String key = key(file);
+        if (key == null)
+            return;
+
+        if (!file.exists()) {
+            entries.remove(key);
+            return;
+        }
+
+        entries.put(key, new Entry(file.isDirectory(), file.isDirectory() ? 0 : file.length(), file.lastModified()));
+
+        File parent = file.getParentFile();
+        while (parent != null && (key = key(parent)) != null && !entries.containsKey(key)) {
+            entries.put(key, new Entry(true, 0, parent.lastModified()));
+            parent = parent.getParentFile();
+        }
+    }
+
+    // Returns null if the index can't answer for this file, and the filesystem must be used
+    Entry get(File file) {
+        if (!ready)
+            return null;
+        String key = key(file);
+        return key == null ? null : entries.getOrDefault(key, Entry.MISSING);
+    }
+
+    private String key(File file) {
+        String path = file.getPath();
+        if (path.equals(rootPath))
+            return "";
+        if (!path.startsWith(rootPath) || path.charAt(rootPath.length()) != File.separatorChar)
+            return null;
+        String key = path.substring(rootPath.length() + 1);
+        return File.separatorChar == '/' ? key : key.replace(File.separatorChar, '/');
+    }
+
+    static final class Entry {
+        private static final Entry MISSING = new Entry(false, 0, 0);
+
+        final boolean directory;
+        final long size;
+        final long modified;
+
+        private Entry(boolean directory, long size, long modified) {
+            this.directory = directory;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        boolean exists() {
+            return this != MISSING;
+        }
+    }
+
+    /*
+     * File that answers metadata queries from the index when it can. Everything that
+     * actually reads or writes data still goes to the real file.
+     */
+    @SuppressWarnings("serial")
+    static final class IndexedFile extends File {
+        private final transient ArtifactIndex index;
+
+        private IndexedFile(ArtifactIndex index, File parent, String child) {
+            super(parent, child);
+            this.index = index;
+        }
+
+        void refresh() {
+            index.refresh(this);
+        }
+
+        @Override
+        public boolean exists() {
+            Entry entry = index.get(this);
+            return entry == null ? super.exists() : entry.exists();
+        }
+
+        @Override
+        public boolean isDirectory() {
+            Entry entry = index.get(this);
+            return entry == null ? super.isDirectory() : entry.directory;
+        }
+
+        @Override
+        public boolean isFile() {
+            Entry entry = index.get(this);
+            return entry == null ? super.isFile() : entry.exists() && !entry.directory;
+        }
+
+        @Override
+        public long length() {
+            Entry entry = index.get(this);
+            return entry == null ? super.length() : entry.size;
+        }
+
+        @Override
+        public long lastModified() {
+            Entry entry = index.get(this);
+            return entry == null ? super.lastModified() : entry.modified;
+        }
+    }
+}
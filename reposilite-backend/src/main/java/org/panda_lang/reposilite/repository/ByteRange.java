@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Single range of a 'Range: bytes=...' request header, with both ends inclusive.
+ */
+final class ByteRange {
+    // More than this is more likely to be abuse than a real client
+    private static final int MAX_RANGES = 16;
+
+    final long start;
+    final long end;
+
+    ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    long length() {
+        return end - start + 1;
+    }
+
+    String toContentRange(long total) {
+        return "bytes " + start + '-' + end + '/' + total;
+    }
+
+    /*
+     * Parses the header against a representation of the given length.
+     * Returns null if the header should be ignored, and the full content sent, because it's not in bytes or malformed.
+     * Returns an empty list if none of the ranges can be satisfied, so it should be answered with a 416.
+     * Ranges past the end are clamped to it, and unsatisfiable ones are dropped.
+     */
+    static List<ByteRange> parse(String header, long length) {
+        if (header == null || header.length() < 6 || !header.regionMatches(true, 0, "bytes=", 0, 6))
+            return null;
+
+        String[] specs = header.substring(6).split(",");
+        if (specs.length > MAX_RANGES)
+            return null;
+
+        List<ByteRange> ranges = new ArrayList<>(specs.length);
+
+        for (String spec : specs) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash == -1)
+                return null;
+
+            long start;
+            long end;
+            try {
+                if (dash == 0) { // Suffix, the last n bytes
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix < 0)
+                        return null;
+                    if (suffix == 0 || length == 0)
+                        continue;
+                    start = Math.max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = Long.parseLong(spec.substring(0, dash));
+                    end = dash == spec.length() - 1 ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                    if (start < 0 || end < start)
+                        return null;
+                    if (start >= length)
+                        continue;
+                    end = Math.min(end, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            ranges.add(new ByteRange(start, end));
+        }
+
+        return ranges.isEmpty() ? Collections.emptyList() : ranges;
+    }
+
+    @Override
+    public String toString() {
+        return "ByteRange[" + start + "-" + end + "]";
+    }
+}
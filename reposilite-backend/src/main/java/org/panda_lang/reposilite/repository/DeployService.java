@@ -16,6 +16,9 @@
 
 package org.panda_lang.reposilite.repository;
 
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.BoundedInputStream;
 import org.apache.http.HttpStatus;
 import org.panda_lang.reposilite.Reposilite;
 import org.panda_lang.reposilite.ReposiliteContext;
@@ -24,20 +27,33 @@ import org.panda_lang.reposilite.auth.Session;
 import org.panda_lang.reposilite.error.ErrorDto;
 import org.panda_lang.reposilite.error.ResponseUtils;
 import org.panda_lang.reposilite.repository.IRepository.View;
+import org.panda_lang.reposilite.utils.Checksums;
+import org.panda_lang.reposilite.utils.HashFunction;
 import org.panda_lang.utilities.commons.function.Result;
+import org.panda_lang.utilities.commons.function.ThrowingSupplier;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 final class DeployService {
+    private static final int MAX_CHECKSUM_SIZE = 1024;
+
     private final IRepositoryManager repos;
     private final MetadataService metadataService;
+    private final DeployedChecksums deployedChecksums;
 
     public DeployService(
             IRepositoryManager repos,
-            MetadataService metadataService) {
+            MetadataService metadataService,
+            DeployedChecksums deployedChecksums) {
         this.repos = repos;
         this.metadataService = metadataService;
+        this.deployedChecksums = deployedChecksums;
     }
 
     public Result<CompletableFuture<Result<FileDetailsDto, ErrorDto>>, ErrorDto> deploy(ReposiliteContext context) {
@@ -97,8 +113,38 @@ final class DeployService {
             return ResponseUtils.error(HttpStatus.SC_METHOD_NOT_ALLOWED, "Cannot deploy non-SNAPSHOT artifact to snapshot repo");
         }
 
+        ThrowingSupplier<InputStream, IOException> source = context::input;
+        HashFunction checksum = Checksums.sidecarOf(file.getName());
+
+        if (!isMeta && checksum != null) {
+            byte[] uploaded;
+            try (InputStream input = context.input()) {
+                uploaded = IOUtils.toByteArray(new BoundedInputStream(input, MAX_CHECKSUM_SIZE + 1));
+            } catch (IOException exception) {
+                return ResponseUtils.error(HttpStatus.SC_BAD_REQUEST, "Cannot read checksum");
+            }
+
+            if (uploaded.length > MAX_CHECKSUM_SIZE) {
+                return ResponseUtils.error(HttpStatus.SC_BAD_REQUEST, "Checksum is too large");
+            }
+
+            // Checked against what the file it belongs to hashed to while it was stored
+            String artifact = context.filepath().substring(0, context.filepath().length() - checksum.getExtension().length() - 1);
+            String mismatch = deployedChecksums.verify(repo.getFile(context.view(), artifact), checksum, new String(uploaded, StandardCharsets.UTF_8));
+
+            if (mismatch != null) {
+                Reposilite.getLogger().warn("DEPLOY " + authResult.get().getAlias() + " uploaded a mismatched checksum from " + context.address() + ": " + mismatch);
+                return ResponseUtils.error(HttpStatus.SC_BAD_REQUEST, "Checksum does not match the uploaded artifact");
+            }
+
+            source = () -> new ByteArrayInputStream(uploaded);
+        }
+
         FileDetailsDto fileDetails = FileDetailsDto.of(file);
 
+        // Ours from now on, even if it was proxied before, so it's never replaced by what the upstream has
+        FileUtils.deleteQuietly(repo.getUpstreamFile(context.view(), context.filepath()));
+
         File metadataFile = new File(file.getParentFile(), "maven-metadata.xml");
         metadataService.clearMetadata(metadataFile);
 
@@ -115,9 +161,11 @@ final class DeployService {
             repo,
             context.view(),
             context.filepath(),
-            context::input,
+            source,
             () -> fileDetails,
-            exception -> new ErrorDto(HttpStatus.SC_INTERNAL_SERVER_ERROR, "Failed to upload artifact"));
+            exception -> exception instanceof RejectedExecutionException
+                ? new ErrorDto(HttpStatus.SC_SERVICE_UNAVAILABLE, "Too many uploads in progress, try again later")
+                : new ErrorDto(HttpStatus.SC_INTERNAL_SERVER_ERROR, "Failed to upload artifact"));
 
         return Result.ok(task);
     }
@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.panda_lang.reposilite.console.ReposiliteCommand;
+import org.panda_lang.reposilite.utils.Checksums;
+import org.panda_lang.reposilite.utils.HashFunction;
+import picocli.CommandLine.Command;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * The checksums of recently stored files, taken while they were written. Maven uploads the checksum files
+ * right after the file they belong to, so they're checked against these, without reading the file again.
+ * Checksum files of anything that isn't remembered anymore are stored without being checked.
+ */
+final class DeployedChecksums {
+    private static final int MAX_MISMATCHES = 20;
+
+    private final Cache<File, Checksums> recent = CacheBuilder.newBuilder()
+        .maximumSize(10_000)
+        .expireAfterWrite(1, TimeUnit.HOURS)
+        .build();
+    private final Deque<String> mismatches = new ArrayDeque<>();
+    private final AtomicLong verified = new AtomicLong();
+    private final AtomicLong mismatched = new AtomicLong();
+    private final AtomicLong unverified = new AtomicLong();
+
+    void stored(File file, Checksums checksums) {
+        recent.put(file, checksums);
+    }
+
+    /*
+     * Returns why the uploaded checksum doesn't match the file it belongs to, or null if it does,
+     * or if it's not known what it should be. Both "hash" and the "hash  filename" form of sha1sum are accepted.
+     */
+    String verify(File file, HashFunction function, String uploaded) {
+        Checksums checksums = recent.getIfPresent(file);
+        if (checksums == null) {
+            unverified.incrementAndGet();
+            return null;
+        }
+
+        String trimmed = uploaded.trim();
+        int end = 0;
+        while (end < trimmed.length() && !Character.isWhitespace(trimmed.charAt(end)))
+            end++;
+
+        String expected = checksums.get(function);
+        String received = trimmed.substring(0, end).toLowerCase(Locale.ROOT);
+        if (expected.equals(received)) {
+            verified.incrementAndGet();
+            return null;
+        }
+
+        mismatched.incrementAndGet();
+        String mismatch = file + "." + function.getExtension() + " is " + received + ", expected " + expected;
+        synchronized (mismatches) {
+            if (mismatches.size() == MAX_MISMATCHES)
+                mismatches.removeFirst();
+            mismatches.addLast(mismatch);
+        }
+        return mismatch;
+    }
+
+    List<String> getMismatches() {
+        synchronized (mismatches) {
+            return new ArrayList<>(mismatches);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "DeployedChecksums[verified: " + verified.get() + ", mismatched: " + mismatched.get()
+            + ", unverified: " + unverified.get() + ", remembered: " + recent.size() + "]";
+    }
+
+    @Command(name = "checksums", description = "Show how uploaded checksums compared to the files they belong to")
+    static final class ChecksumsCommand implements ReposiliteCommand {
+        private final DeployedChecksums checksums;
+
+        ChecksumsCommand(DeployedChecksums checksums) {
+            this.checksums = checksums;
+        }
+
+        @Override
+        public boolean execute(List<String> response) {
+            response.add(checksums.toString());
+
+            List<String> mismatches = checksums.getMismatches();
+            if (!mismatches.isEmpty()) {
+                response.add("Rejected (last " + mismatches.size() + "):");
+                for (String mismatch : mismatches)
+                    response.add("  " + mismatch);
+            }
+
+            return true;
+        }
+    }
+}
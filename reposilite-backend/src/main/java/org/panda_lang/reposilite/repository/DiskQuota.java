@@ -16,15 +16,20 @@
 
 package org.panda_lang.reposilite.repository;
 
+import org.panda_lang.reposilite.Reposilite;
 import org.panda_lang.reposilite.utils.FilesUtils;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.concurrent.atomic.AtomicLong;
 
 final class DiskQuota implements IQuota {
     private final DiskQuota parent;
     private final AtomicLong quota;
     private final AtomicLong usage;
+    private volatile boolean provisional = false;
+    private volatile boolean changedWhileProvisional = false; // The walk may have found what was allocated as well
+    private QuotaJournal journal = null; // Guarded by this
     private String toString = null;
 
     private DiskQuota(DiskQuota parent, long quota, long usage) {
@@ -33,13 +38,87 @@ final class DiskQuota implements IQuota {
         this.usage = new AtomicLong(usage);
     }
 
+    // Negative for files that were replaced by smaller ones, or removed
     void allocate(long size) {
         if (parent != null)
             parent.allocate(size);
+
+        synchronized (this) {
+            toString = null;
+            usage.addAndGet(size);
+            if (provisional)
+                changedWhileProvisional = true;
+
+            if (journal != null) {
+                try {
+                    if (journal.append(size))
+                        journal.snapshot(usage.get(), false);
+                } catch (IOException exception) {
+                    abandon(exception);
+                }
+            }
+        }
+    }
+
+    // Usage that was there before this run, and is remembered by the journal already, or will be once it's attached
+    void restore(long size) {
+        if (parent != null)
+            parent.restore(size);
         toString = null;
         usage.addAndGet(size);
     }
 
+    /*
+     * Keeps the usage in the journal from now on, starting from a snapshot of the current one.
+     * Marked as not shut down cleanly until save is called.
+     */
+    synchronized void attach(QuotaJournal journal) {
+        try {
+            journal.snapshot(usage.get(), false);
+            this.journal = journal;
+        } catch (IOException exception) {
+            this.journal = journal;
+            abandon(exception);
+        }
+    }
+
+    // Folds the changes into a new snapshot, clean when nothing is going to change anymore before the next start
+    synchronized void save(boolean clean) {
+        if (journal == null || (!clean && !journal.hasChanges()))
+            return;
+
+        try {
+            journal.snapshot(usage.get(), clean);
+        } catch (IOException exception) {
+            abandon(exception);
+        }
+    }
+
+    private void abandon(IOException exception) {
+        Reposilite.getLogger().error("Cannot keep the disk usage journal, it will be walked again on the next start", exception);
+        journal.discard();
+        journal = null;
+    }
+
+    // While its usage is still being added up, see DiskUsageScan
+    void setProvisional(boolean value) {
+        if (value)
+            changedWhileProvisional = false;
+        provisional = value;
+        toString = null;
+    }
+
+    // Whether anything was allocated since it became provisional, a walk that ran meanwhile can't tell it apart
+    boolean isChangedWhileProvisional() {
+        return changedWhileProvisional;
+    }
+
+    @Override
+    public boolean isProvisional() {
+        return provisional;
+    }
+
+    // Provisional quotas are enforced on what was found so far
     public boolean hasSpace() {
         return (this.parent == null || this.parent.hasSpace()) && usage.get() < quota.get();
     }
@@ -58,7 +137,7 @@ final class DiskQuota implements IQuota {
     public String toString() {
         String ret = toString;
         if (ret == null) {
-            ret = toString = FilesUtils.bytesToDisplay(getUsage()) + '/' + FilesUtils.bytesToDisplay(getCapacity());
+            ret = toString = FilesUtils.bytesToDisplay(getUsage()) + '/' + FilesUtils.bytesToDisplay(getCapacity()) + (provisional ? " (provisional)" : "");
         }
         return ret;
     }
@@ -0,0 +1,239 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import org.panda_lang.reposilite.Reposilite;
+import org.panda_lang.reposilite.utils.FilesUtils;
+import org.panda_lang.reposilite.utils.TimeUtils;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinPool.ForkJoinWorkerThreadFactory;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+import javax.annotation.Nullable;
+
+/*
+ * Adds up what the repositories take on disk, in the background, so the server is up while it walks them.
+ * Repositories with a QuotaJournal from the last run start with the usage it remembers instead, and are
+ * only walked again at low priority to verify it, when asked to, or when the last run didn't shut down cleanly.
+ *
+ * Directories are walked in parallel, and the size of each one is added as soon as it's listed,
+ * so the quotas grow towards their real usage. Until a repository is done, its quota is provisional,
+ * and only what was found so far counts against it. Files stored meanwhile are allocated as well, and
+ * counted twice if the walk finds them too, so a repository that changed is walked once more to verify it
+ * before the journal remembers its usage.
+ *
+ * Partial files never count, they're added once they're moved into place. Those older than this start were
+ * left behind by a write that never finished, and are deleted on the way. Repositories that are not walked
+ * otherwise are swept for them in the background.
+ */
+public final class DiskUsageScan {
+    private static final ForkJoinWorkerThreadFactory LOW_PRIORITY = pool -> {
+        ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    };
+    // Timestamps may be rounded down by the filesystem, partial files of this run must not look older than it
+    private static final long STALE_MARGIN = 2000;
+
+    private final int parallelism;
+    private final AtomicLong files = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong restored = new AtomicLong();
+    private final AtomicLong removed = new AtomicLong();
+    private volatile long started = 0;
+    private volatile long finished = 0;
+
+    DiskUsageScan(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    CompletableFuture<Void> start(DiskQuota total, Collection<? extends IRepository> repos, boolean verify) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        ForkJoinPool background = new ForkJoinPool(1, LOW_PRIORITY, null, false);
+        List<CompletableFuture<Void>> walks = new ArrayList<>();
+        List<CompletableFuture<Void>> verifications = new ArrayList<>();
+        this.started = System.currentTimeMillis();
+
+        for (IRepository repo : repos) {
+            DiskQuota quota = (DiskQuota)repo.getQuota();
+            QuotaJournal journal = new QuotaJournal(repo.getDirectory());
+            QuotaJournal.Remembered remembered = journal.read();
+
+            if (remembered != null) {
+                quota.restore(remembered.getUsage());
+                quota.attach(journal);
+                restored.incrementAndGet();
+
+                verifications.add(verify || !remembered.isClean()
+                    ? CompletableFuture.runAsync(() -> verify(repo, quota), background)
+                    : CompletableFuture.runAsync(() -> new Walk(repo.getDirectory().toPath(), null).invoke(), background));
+                continue;
+            }
+
+            quota.setProvisional(true);
+            total.setProvisional(true);
+
+            walks.add(CompletableFuture
+                .runAsync(() -> {
+                    new Walk(repo.getDirectory().toPath(), quota::restore).invoke();
+                    if (quota.isChangedWhileProvisional())
+                        verify(repo, quota);
+                }, pool)
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        Reposilite.getLogger().error("Cannot scan disk usage of " + repo.getName(), throwable);
+                        return; // Provisional until the next start
+                    }
+
+                    quota.attach(journal);
+                    quota.setProvisional(false);
+                }));
+        }
+
+        CompletableFuture<Void> walked = CompletableFuture.allOf(walks.toArray(new CompletableFuture[0])).whenComplete((result, throwable) -> {
+            if (throwable == null)
+                total.setProvisional(false);
+            pool.shutdown();
+        });
+
+        verifications.add(walked);
+        return CompletableFuture.allOf(verifications.toArray(new CompletableFuture[0])).whenComplete((result, throwable) -> {
+            this.finished = System.currentTimeMillis();
+            background.shutdown();
+            Reposilite.getLogger().info("Disk usage of " + repos.size() + " repositories scanned, " + this);
+        });
+    }
+
+    /*
+     * Corrects the remembered usage with what's actually there. Files that change while it walks
+     * may be off by their size until the next one, which is why it's optional.
+     */
+    private void verify(IRepository repo, DiskQuota quota) {
+        AtomicLong found = new AtomicLong();
+        long remembered = quota.getUsage();
+        new Walk(repo.getDirectory().toPath(), found::addAndGet).invoke();
+
+        long correction = found.get() - remembered;
+        if (correction != 0) {
+            Reposilite.getLogger().warn("Disk usage of " + repo.getName() + " was off by " + correction + " bytes, corrected");
+            quota.allocate(correction);
+        }
+    }
+
+    public boolean isDone() {
+        return finished != 0;
+    }
+
+    public long getFiles() {
+        return files.get();
+    }
+
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public String toString() {
+        if (started == 0)
+            return "not started";
+
+        long end = isDone() ? finished : System.currentTimeMillis();
+        return (isDone() ? "done, " : "scanning, ") + restored.get() + " restored from the journal, " + files.get() + " files, " + FilesUtils.bytesToDisplay(bytes.get())
+            + " in " + TimeUtils.format((end - started) / 1000.0) + "s" + (failures.get() > 0 ? ", " + failures.get() + " unreadable directories" : "")
+            + (removed.get() > 0 ? ", " + removed.get() + " stale partial files removed" : "");
+    }
+
+    private final class Walk extends RecursiveAction {
+        private final Path directory;
+        private final @Nullable LongConsumer found; // Null to only sweep partial files
+
+        private Walk(Path directory, @Nullable LongConsumer found) {
+            this.directory = directory;
+            this.found = found;
+        }
+
+        @Override
+        protected void compute() {
+            List<Walk> subdirectories = new ArrayList<>();
+            long size = 0;
+            long count = 0;
+
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+
+                    // Bookkeeping of our own, it's never allocated either
+                    if (QuotaJournal.isJournal(name) || Repository.UPSTREAM_DIRECTORY.equals(name))
+                        continue;
+
+                    // One stat for both, and links aren't followed, the same as FileUtils.sizeOfDirectory
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = Files.readAttributes(entry, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (NoSuchFileException exception) {
+                        continue; // Deleted while we walked by
+                    }
+
+                    if (attributes.isDirectory()) {
+                        subdirectories.add(new Walk(entry, found));
+                    } else if (FilesUtils.isPartial(name)) {
+                        if (attributes.lastModifiedTime().toMillis() < started - STALE_MARGIN)
+                            remove(entry);
+                    } else if (attributes.isRegularFile()) {
+                        size += attributes.size();
+                        count++;
+                    }
+                }
+            } catch (IOException exception) {
+                failures.incrementAndGet(); // Not ours to read, or deleted, either way it doesn't count
+            }
+
+            if (found != null) {
+                found.accept(size);
+                bytes.addAndGet(size);
+                files.addAndGet(count);
+            }
+
+            invokeAll(subdirectories);
+        }
+
+        private void remove(Path partial) {
+            try {
+                if (Files.deleteIfExists(partial))
+                    removed.incrementAndGet();
+            } catch (IOException exception) {
+                Reposilite.getLogger().warn("Cannot delete stale partial file " + partial + ": " + exception.getMessage());
+            }
+        }
+    }
+}
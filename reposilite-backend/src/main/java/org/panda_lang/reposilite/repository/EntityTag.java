@@ -0,0 +1,61 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+/*
+ * Strong entity tags for lookup responses, and the matching rules for the conditional request headers.
+ *
+ * Files get their size and modification time, which is what changes on a redeploy, so the tag costs
+ * nothing beyond the stat the response needs anyway. Generated documents get the hash they're cached with.
+ */
+final class EntityTag {
+
+    private EntityTag() { }
+
+    static String of(long length, long lastModified) {
+        return "\"" + Long.toHexString(length) + '-' + Long.toHexString(lastModified) + '"';
+    }
+
+    static String of(String hash) {
+        return '"' + hash + '"';
+    }
+
+    /*
+     * If-None-Match uses the weak comparison, so W/ prefixes are ignored on both sides.
+     */
+    static boolean matchesAny(String header, String etag) {
+        String tag = opaque(etag);
+        for (String candidate : header.split(",")) {
+            candidate = candidate.trim();
+            if ("*".equals(candidate) || opaque(candidate).equals(tag))
+                return true;
+        }
+        return false;
+    }
+
+    /*
+     * If-Range uses the strong comparison, so weak tags never match.
+     */
+    static boolean matchesStrong(String header, String etag) {
+        String candidate = header.trim();
+        return !candidate.startsWith("W/") && !etag.startsWith("W/") && candidate.equals(etag);
+    }
+
+    private static String opaque(String etag) {
+        return etag.startsWith("W/") ? etag.substring(2) : etag;
+    }
+}
@@ -21,8 +21,6 @@ import org.panda_lang.reposilite.utils.FilesUtils;
 import org.panda_lang.utilities.commons.StringUtils;
 
 import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
 import java.text.SimpleDateFormat;
 
 final class FileDetailsDto implements Comparable<FileDetailsDto> {
@@ -93,11 +91,9 @@ final class FileDetailsDto implements Comparable<FileDetailsDto> {
         String date = StringUtils.EMPTY;
         String contentType = FilesUtils.getMimeType(file.getAbsolutePath(), "application/octet-stream");
 
+        // lastModified instead of Files.getLastModifiedTime, so an indexed repository can answer from memory
         if (file.exists()) {
-            try {
-                date = DATE_FORMAT.format(Files.getLastModifiedTime(file.toPath()).toMillis());
-            }
-            catch (IOException ignored) { /* file does not exist */ }
+            date = DATE_FORMAT.format(file.lastModified());
         }
 
         return new FileDetailsDto(
@@ -4,6 +4,10 @@ public interface IQuota {
     long getUsage();
     long getCapacity();
 
+    default boolean isProvisional() { // Usage is still being added up, and only a lower bound
+        return false;
+    }
+
     default boolean hasSpace() {
         return getUsage() < getCapacity();
     }
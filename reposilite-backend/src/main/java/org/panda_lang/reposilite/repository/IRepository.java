@@ -9,11 +9,17 @@ public interface IRepository {
     }
 
     String getName();
+    File getDirectory(); // Where everything of this repository is stored
     boolean isReadOnly();
     boolean isHidden();
     boolean canBrowse();
     String getDelegate();
     Collection<String> getProxies();
+    ProxyStrategy getProxyStrategy();
+    int getHedgeDelay(); // Milliseconds before the next proxy is asked as well, 0 to use their recent response times
+    Collection<String> getPrefixes();
+    int getNegativeCacheTtl(); // Seconds to remember a path as missing, 0 to disable
+    int getRevalidateTtl(); // Seconds before a proxied file that may change is checked upstream again, 0 to never
     boolean canContain(String path);
     boolean isDirectory(String path);
 
@@ -26,6 +32,7 @@ public interface IRepository {
     //TODO: Make this not use files, but something that allows us to swap out storage backends
     File getFile(View view, String... elements);
     boolean contains(View view, String path);
+    File getUpstreamFile(View view, String path); // Where we keep what we know about the upstream of a proxied file
 
     public interface Builder {
         Builder prefix(String... values);
@@ -37,6 +44,11 @@ public interface IRepository {
         Builder quota(String value);
         Builder proxy(String... values);
         Builder delegate(String value);
+        Builder proxyStrategy(ProxyStrategy value);
+        Builder hedgeDelay(int value);
+        Builder index(boolean value); // Keep an in memory index of files, instead of asking the disk on every lookup
+        Builder negativeCacheTtl(int value);
+        Builder revalidateTtl(int value);
         Builder dir(File value);
         Builder baseDir(File value);
         IRepository build();
@@ -50,4 +62,21 @@ public interface IRepository {
         // A view of everything, most likely multiple repos
         ALL
     }
+
+    public enum ProxyStrategy {
+        // Ask the proxies one after another, in order
+        SEQUENTIAL,
+        // Ask all proxies at once, the first to have the file wins
+        PARALLEL,
+        // Ask the next proxy as well once the previous one takes longer than it usually does
+        HEDGED;
+
+        public static ProxyStrategy of(String name) {
+            for (ProxyStrategy strategy : values()) {
+                if (strategy.name().equalsIgnoreCase(name))
+                    return strategy;
+            }
+            throw new IllegalArgumentException("Unknown proxy strategy '" + name + "', expected sequential, parallel or hedged");
+        }
+    }
 }
@@ -2,6 +2,7 @@ package org.panda_lang.reposilite.repository;
 
 import java.io.File;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.BiConsumer;
@@ -19,10 +20,14 @@ public interface IRepositoryManager extends IJavalinComponent {
      * Calculates quotas and stuff like that
      */
     void load();
+    void save(); // Remembers what the next start needs, such as the disk usage, when shutting down
 
     IRepository getRepo(String name);
     Collection<? extends IRepository> getRepos();
     IQuota getQuota();
+    DiskUsageScan getDiskUsageScan(); // Of the quotas, started by load()
+    List<UpstreamDto> getUpstreams(); // Every proxied repository that was asked for something so far
+    MetadataService getMetadataService();
 
     @Deprecated //TODO: Move commands to their own package
     ReposiliteConfiguration getCommands();
@@ -30,8 +35,14 @@ public interface IRepositoryManager extends IJavalinComponent {
     public static interface Builder {
         Builder quota(String value);
         Builder dir(File value);
-        Builder executor(ExecutorService value);
+        Builder metadataCache(String value); // Memory for merged maven-metadata.xml files, such as 32MB
+        Builder verifyDiskUsage(boolean value); // Walk the repositories on start even if their usage is remembered
+        Builder executor(ExecutorService value); // Storage, used for all of them unless set separately
+        Builder proxyExecutor(ExecutorService value);
+        Builder raceExecutor(ExecutorService value); // Asks the proxies of a raced lookup, while a proxy thread waits for the winner
+        Builder circuitBreaker(int failures, int cooldown); // Failures in a row before a proxy is skipped, and seconds until it's tried again
         Builder scheduled(ScheduledExecutorService value);
+        Builder transport(UpstreamTransport value); // HTTP client for the proxied repositories, closed by whoever created it, the default is only created if there are any
         Builder error(BiConsumer<String, Exception> value);
         Builder repo(IRepository value);
         IRepository.Builder repo(String name);
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import java.util.Arrays;
+
+/*
+ * The last few response times of an upstream, to tell how long it usually takes.
+ * Old samples are overwritten, so it follows the upstream as it speeds up or slows down.
+ */
+final class LatencyWindow {
+    private static final int MIN_SAMPLES = 10;
+
+    private final long[] samples;
+    private int next = 0;
+    private int count = 0;
+
+    LatencyWindow(int size) {
+        this.samples = new long[size];
+    }
+
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        if (count < samples.length)
+            count++;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    /*
+     * Returns the response time that the given percent of recent responses were faster than,
+     * or -1 when there are too few of them to tell.
+     */
+    long percentile(double percent) {
+        long[] sorted;
+        synchronized (this) {
+            if (count < MIN_SAMPLES)
+                return -1;
+            sorted = Arrays.copyOf(samples, count);
+        }
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(sorted.length - 1, index))];
+    }
+}
@@ -148,6 +148,7 @@ final class LookupApiEndpoint implements IAuthedHandler {
         }
 
         ctx.json(new FileListDto(Arrays.stream(FilesUtils.listFiles(requestedFile))
+            .filter(file -> !FilesUtils.isPartial(file.getName())) // Not there until they're complete
             .sorted((a,b) -> {
                 if (a.isDirectory() != b.isDirectory())
                     return a.isDirectory() ? -1 : 1;
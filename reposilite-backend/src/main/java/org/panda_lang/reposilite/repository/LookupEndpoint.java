@@ -23,16 +23,28 @@ import io.javalin.plugin.openapi.annotations.OpenApiContent;
 import io.javalin.plugin.openapi.annotations.OpenApiParam;
 import io.javalin.plugin.openapi.annotations.OpenApiResponse;
 import org.apache.http.HttpStatus;
+import org.eclipse.jetty.server.HttpOutput;
 import org.panda_lang.reposilite.Reposilite;
 import org.panda_lang.reposilite.ReposiliteContext;
+import org.panda_lang.reposilite.ReposiliteException;
 import org.panda_lang.reposilite.auth.IAuthedHandler;
 import org.panda_lang.reposilite.error.ErrorDto;
 import org.panda_lang.reposilite.error.ResponseUtils;
 import org.panda_lang.reposilite.resource.FrontendProvider;
 import org.panda_lang.reposilite.utils.OutputUtils;
 import org.panda_lang.utilities.commons.function.Result;
+import org.panda_lang.utilities.commons.function.ThrowingSupplier;
 
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.BiConsumer;
 
 public final class LookupEndpoint implements IAuthedHandler {
@@ -61,6 +73,9 @@ public final class LookupEndpoint implements IAuthedHandler {
             @OpenApiResponse(status = "200", description = "Input stream of requested file", content = {
                 @OpenApiContent(type = ContentType.FORM_DATA_MULTIPART)
             }),
+            @OpenApiResponse(status = "206", description = "Requested ranges of the file, as a single range or multipart/byteranges"),
+            @OpenApiResponse(status = "304", description = "File matches the If-None-Match or If-Modified-Since validators of the request"),
+            @OpenApiResponse(status = "416", description = "None of the requested ranges are within the file"),
             @OpenApiResponse(
                 status = "404",
                 description = "Returns 404 (for Maven) with frontend (for user) as a response if requested resource is not located in the current repository"
@@ -76,35 +91,193 @@ public final class LookupEndpoint implements IAuthedHandler {
             return;
         }
 
-        Result<LookupResponse, ErrorDto> response = localLookup.findFile(context);
+        CompletableFuture<Result<LookupResponse, ErrorDto>> lookup = localLookup.findFile(context);
+        Result<LookupResponse, ErrorDto> response = lookup.getNow(null);
 
-        handleResult(ctx, context, response);
+        if (response != null || !ctx.req.isAsyncSupported()) {
+            handleResult(ctx, context, response != null ? response : lookup.join(), false);
+            return;
+        }
+
+        // Waiting on an upstream, suspend the request so this thread can go serve others meanwhile.
+        // Its response is sent with async I/O too, the proxy thread completing the lookup only starts it.
+        AsyncContext asyncContext = ctx.req.startAsync();
+        asyncContext.setTimeout(0); // Large downloads take as long as they take, the connection idle timeout still applies
+
+        lookup.thenCompose(result -> handleResult(ctx, context, result, true)).whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                errorHandler.accept(context.uri(), new ReposiliteException("Cannot send " + context.uri(), throwable));
+            }
+            asyncContext.complete();
+        });
     }
 
-    private void handleResult(Context ctx, ReposiliteContext context, Result<LookupResponse, ErrorDto> result) {
-        result
-            .peek(response -> handleResult(ctx, context, response))
-            .onError(error -> handleError(ctx, error));
+    /*
+     * 'suspended' is whether the request is in async mode already, Javalin doesn't write anything for those anymore.
+     * Returns the future of whatever is still being sent with async I/O, completed right away if nothing is.
+     */
+    private CompletableFuture<Void> handleResult(Context ctx, ReposiliteContext context, Result<LookupResponse, ErrorDto> result, boolean suspended) {
+        if (result.isErr()) {
+            handleError(ctx, context, result.getError(), suspended);
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return handleResult(ctx, context, result.get(), suspended);
     }
 
-    private void handleResult(Context ctx, ReposiliteContext context, LookupResponse response) {
-        response.getFileDetails().peek(details -> {
-            if (details.getContentLength() > 0) {
-                ctx.res.setContentLengthLong(details.getContentLength());
-            }
+    private CompletableFuture<Void> handleResult(Context ctx, ReposiliteContext context, LookupResponse response, boolean suspended) {
+        CompletableFuture<Void> done = CompletableFuture.completedFuture(null);
 
+        response.getFileDetails().peek(details -> {
             if (response.isAttachment()) {
                 ctx.res.setHeader("Content-Disposition", "attachment; filename=\"" + details.getName() + "\"");
             }
         });
 
         response.getContentType().peek(ctx.res::setContentType);
-        response.getValue().peek(ctx::result);
 
+        String etag = response.getETag();
+        long lastModified = response.getLastModified();
+
+        if (etag != null) {
+            ctx.res.setHeader("ETag", etag);
+        }
+
+        if (lastModified > 0) {
+            ctx.res.setDateHeader("Last-Modified", lastModified);
+        }
+
+        if (isNotModified(ctx, etag, lastModified)) {
+            ctx.status(HttpStatus.SC_NOT_MODIFIED);
+            return done;
+        }
+
+        File file = response.getFile().getOrNull();
+        byte[] value = response.getValue().getOrNull();
+        StreamedDownload download = response.getDownload().getOrNull();
+        boolean head = "HEAD".equals(context.method());
+
+        if (file == null && value == null) {
+            response.getFileDetails().peek(details -> {
+                if (details.getContentLength() > 0) {
+                    ctx.res.setContentLengthLong(details.getContentLength());
+                }
+            });
+
+            if (download != null && !head) { // A HEAD may join a proxied GET, it only wants the headers
+                return follow(ctx, context, download, suspended);
+            }
+
+            writeContextResult(ctx, context);
+            return done;
+        }
+
+        long length = file != null ? file.length() : value.length;
+        ctx.res.setHeader("Accept-Ranges", "bytes");
+
+        String range = ctx.header("Range");
+        List<ByteRange> ranges = range == null || !isRangeCurrent(ctx, etag, lastModified) ? null : ByteRange.parse(range, length);
+
+        if (ranges != null && ranges.isEmpty()) {
+            ctx.res.setHeader("Content-Range", "bytes */" + length);
+            ctx.status(HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return done;
+        }
+
+        try {
+            if (ranges == null) {
+                if (file != null) // Values go through Javalin, which may compress them
+                    ctx.res.setContentLengthLong(length);
+                if (head)
+                    return done;
+                if (file != null && length > ctx.res.getBufferSize())
+                    return sendAsync(ctx, context, file, 0, length, suspended);
+                writeFull(ctx, file, value, suspended);
+            } else if (ranges.size() == 1) {
+                ByteRange single = ranges.get(0);
+                ctx.status(HttpStatus.SC_PARTIAL_CONTENT);
+                ctx.res.setHeader("Content-Range", single.toContentRange(length));
+                ctx.res.setContentLengthLong(single.length());
+                if (head)
+                    return done;
+                if (file != null && single.length() > ctx.res.getBufferSize())
+                    return sendAsync(ctx, context, file, single.start, single.length(), suspended);
+                writeRange(ctx.res.getOutputStream(), file, value, single);
+            } else {
+                writeRanges(ctx, head, file, value, ranges, length);
+            }
+        } catch (IOException exception) {
+            errorHandler.accept(context.uri(), exception);
+        }
+
+        return done;
+    }
+
+    /*
+     * Sends the file without holding on to a thread while a slow client reads it, like Jetty's own ResourceService does.
+     * Anything that fits in the response buffer never blocks to begin with, so only larger files are sent this way.
+     */
+    private CompletableFuture<Void> sendAsync(Context ctx, ReposiliteContext context, File file, long offset, long length, boolean suspended) throws IOException {
+        ServletOutputStream output = ctx.res.getOutputStream();
+
+        if (!(output instanceof HttpOutput) || !ctx.req.isAsyncSupported()) {
+            writeRange(output, file, null, new ByteRange(offset, offset + length - 1));
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return async(ctx, context, suspended, () -> OutputUtils.transferFileAsync(file, offset, length, (HttpOutput) output));
+    }
+
+    // Sends a proxied file as it's downloaded, or the stored one if we came too late to follow the download
+    private CompletableFuture<Void> follow(Context ctx, ReposiliteContext context, StreamedDownload download, boolean suspended) {
+        if (!ctx.req.isAsyncSupported()) {
+            return handleResult(ctx, context, download.stored().join(), false);
+        }
+
+        return async(ctx, context, suspended, () -> {
+            CompletableFuture<Void> sent = download.follow(ctx.res.getOutputStream());
+            return sent != null ? sent : download.stored().thenCompose(result -> handleResult(ctx, context, result, true));
+        });
+    }
+
+    /*
+     * Runs the send in async mode. Requests that aren't suspended yet are, until it's done,
+     * those that are were suspended by whoever waits on the returned future.
+     */
+    private CompletableFuture<Void> async(Context ctx, ReposiliteContext context, boolean suspended, ThrowingSupplier<CompletableFuture<Void>, IOException> send) {
+        AsyncContext asyncContext = null;
+
+        if (!suspended) {
+            asyncContext = ctx.req.startAsync();
+            asyncContext.setTimeout(0); // Large downloads take as long as they take, the connection idle timeout still applies
+        }
+
+        CompletableFuture<Void> sent;
+        try {
+            sent = send.get();
+        } catch (IOException exception) {
+            sent = new CompletableFuture<>();
+            sent.completeExceptionally(exception);
+        }
+
+        AsyncContext started = asyncContext;
+        return sent.handle((ignored, throwable) -> {
+            if (throwable != null) {
+                errorHandler.accept(context.uri(), new ReposiliteException("Cannot send " + context.uri(), throwable));
+            }
+            if (started != null) {
+                started.complete();
+            }
+            return null;
+        });
+    }
+
+    private void writeContextResult(Context ctx, ReposiliteContext context) {
         context.result().peek(result -> {
             try {
-                if (OutputUtils.isProbablyOpen(ctx.res.getOutputStream())) {
-                    result.accept(ctx.res.getOutputStream());
+                ServletOutputStream output = ctx.res.getOutputStream();
+                if (OutputUtils.isProbablyOpen(output)) {
+                    result.accept(output);
                 }
             } catch (IOException exception) {
                 errorHandler.accept(context.uri(), exception);
@@ -112,14 +285,124 @@ public final class LookupEndpoint implements IAuthedHandler {
         });
     }
 
-    private void handleError(Context ctx, ErrorDto error) {
+    private void writeFull(Context ctx, File file, byte[] value, boolean suspended) throws IOException {
+        if (file == null && suspended) {
+            ctx.res.getOutputStream().write(value);
+        } else if (file == null) {
+            ctx.result(value);
+        } else if (OutputUtils.isProbablyOpen(ctx.res.getOutputStream())) {
+            OutputUtils.transferFile(file, ctx.res.getOutputStream());
+        }
+    }
+
+    private void writeRange(OutputStream output, File file, byte[] value, ByteRange range) throws IOException {
+        if (file == null) {
+            output.write(value, (int) range.start, (int) range.length());
+        } else {
+            OutputUtils.transferRange(file, range.start, range.length(), output);
+        }
+    }
+
+    /*
+     * multipart/byteranges, every range gets its own part with a Content-Type and Content-Range.
+     * The parts headers are built up front so the exact Content-Length can be sent.
+     */
+    private void writeRanges(Context ctx, boolean head, File file, byte[] value, List<ByteRange> ranges, long length) throws IOException {
+        String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong()) + Long.toHexString(System.nanoTime());
+        String contentType = ctx.res.getContentType() == null ? "application/octet-stream" : ctx.res.getContentType();
+
+        List<byte[]> headers = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+
+        for (ByteRange range : ranges) {
+            byte[] header = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType + "\r\nContent-Range: " + range.toContentRange(length) + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+            headers.add(header);
+            contentLength += header.length + range.length();
+        }
+
+        byte[] footer = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += footer.length;
+
+        ctx.status(HttpStatus.SC_PARTIAL_CONTENT);
+        ctx.res.setContentType("multipart/byteranges; boundary=" + boundary);
+        ctx.res.setContentLengthLong(contentLength);
+
+        if (head) {
+            return;
+        }
+
+        OutputStream output = ctx.res.getOutputStream();
+
+        for (int index = 0; index < ranges.size(); index++) {
+            output.write(headers.get(index));
+            writeRange(output, file, value, ranges.get(index));
+        }
+
+        output.write(footer);
+    }
+
+    /*
+     * If-None-Match wins over If-Modified-Since when both are sent, as required by RFC 7232.
+     */
+    private boolean isNotModified(Context ctx, String etag, long lastModified) {
+        String ifNoneMatch = ctx.header("If-None-Match");
+
+        if (ifNoneMatch != null) {
+            return etag != null && EntityTag.matchesAny(ifNoneMatch, etag);
+        }
+
+        long ifModifiedSince = getDateHeader(ctx, "If-Modified-Since");
+        return lastModified > 0 && ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /*
+     * A Range is only honored if the If-Range validator, when sent, still describes what we have.
+     */
+    private boolean isRangeCurrent(Context ctx, String etag, long lastModified) {
+        String ifRange = ctx.header("If-Range");
+
+        if (ifRange == null) {
+            return true;
+        }
+
+        if (ifRange.trim().endsWith("\"")) {
+            return etag != null && EntityTag.matchesStrong(ifRange, etag);
+        }
+
+        long date = getDateHeader(ctx, "If-Range");
+        return lastModified > 0 && date != -1 && lastModified / 1000 == date / 1000;
+    }
+
+    private static long getDateHeader(Context ctx, String name) {
+        try {
+            return ctx.req.getDateHeader(name);
+        } catch (IllegalArgumentException ignored) {
+            return -1; // Not a date, treat it like it wasn't sent
+        }
+    }
+
+    private void handleError(Context ctx, ReposiliteContext context, ErrorDto error, boolean suspended) {
         if (error.getStatus() == HttpStatus.SC_MOVED_TEMPORARILY) {
             ctx.redirect(error.getMessage());
-        } else {
-            ctx.result(frontend.forMessage(error.getStatus(), error.getMessage()))
-                .status(error.getStatus())
-                .contentType("text/html")
-                .res.setCharacterEncoding("UTF-8");
+            return;
+        }
+
+        ResponseUtils.retryAfter(ctx, error);
+        ctx.status(error.getStatus())
+            .contentType("text/html")
+            .res.setCharacterEncoding("UTF-8");
+
+        String page = frontend.forMessage(error.getStatus(), error.getMessage());
+
+        if (!suspended) {
+            ctx.result(page);
+            return;
+        }
+
+        try {
+            ctx.res.getOutputStream().write(page.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException exception) {
+            errorHandler.accept(context.uri(), exception);
         }
     }
 }
@@ -19,6 +19,8 @@ package org.panda_lang.reposilite.repository;
 import org.panda_lang.reposilite.utils.FilesUtils;
 import org.panda_lang.utilities.commons.function.Option;
 
+import java.io.File;
+
 final class LookupResponse {
 
     private static final LookupResponse EMPTY_RESPONSE = new LookupResponse();
@@ -27,19 +29,56 @@ final class LookupResponse {
     private final Option<FileDetailsDto> fileDetails;
     private final Option<String> contentType;
     private final boolean attachment;
+    private final Option<File> file;
+    private final Option<StreamedDownload> download;
+    private final String etag;
+    private final long lastModified;
 
-    LookupResponse(String contentType, byte[] data) {
+    // 'etag' is taken as it is, generated documents know their hash already
+    LookupResponse(String contentType, byte[] data, String etag) {
         this.value = Option.of(data);
         this.fileDetails = Option.none();
         this.contentType = Option.of(contentType);
         this.attachment = false;
+        this.file = Option.none();
+        this.download = Option.none();
+        this.etag = etag;
+        this.lastModified = 0;
     }
 
+    // Details only, nothing to send. Used by HEAD requests to proxies
     LookupResponse(FileDetailsDto fileDetails) {
         this.value = Option.none();
         this.fileDetails = Option.of(fileDetails);
         this.contentType = Option.of(fileDetails.getContentType());
         this.attachment = !FilesUtils.isReadable(fileDetails.getName());
+        this.file = Option.none();
+        this.download = Option.none();
+        this.etag = null;
+        this.lastModified = 0;
+    }
+
+    LookupResponse(FileDetailsDto fileDetails, File file) {
+        this.value = Option.none();
+        this.fileDetails = Option.of(fileDetails);
+        this.contentType = Option.of(fileDetails.getContentType());
+        this.attachment = !FilesUtils.isReadable(fileDetails.getName());
+        this.file = Option.of(file);
+        this.download = Option.none();
+        this.lastModified = file.lastModified();
+        this.etag = EntityTag.of(fileDetails.getContentLength(), lastModified);
+    }
+
+    // A proxied file that's still being downloaded, sent as it arrives
+    LookupResponse(FileDetailsDto fileDetails, StreamedDownload download) {
+        this.value = Option.none();
+        this.fileDetails = Option.of(fileDetails);
+        this.contentType = Option.of(fileDetails.getContentType());
+        this.attachment = !FilesUtils.isReadable(fileDetails.getName());
+        this.file = Option.none();
+        this.download = Option.of(download);
+        this.etag = null;
+        this.lastModified = 0;
     }
 
     private LookupResponse() {
@@ -47,6 +86,10 @@ final class LookupResponse {
         this.fileDetails = Option.none();
         this.contentType = Option.none();
         this.attachment = false;
+        this.file = Option.none();
+        this.download = Option.none();
+        this.etag = null;
+        this.lastModified = 0;
     }
 
     boolean isAttachment() {
@@ -65,6 +108,24 @@ final class LookupResponse {
         return value;
     }
 
+    Option<File> getFile() {
+        return file;
+    }
+
+    Option<StreamedDownload> getDownload() {
+        return download;
+    }
+
+    // Null if unknown
+    String getETag() {
+        return etag;
+    }
+
+    // 0 if unknown
+    long getLastModified() {
+        return lastModified;
+    }
+
     public static LookupResponse empty() {
         return EMPTY_RESPONSE;
     }
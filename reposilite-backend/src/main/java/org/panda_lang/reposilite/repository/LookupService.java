@@ -16,7 +16,6 @@
 
 package org.panda_lang.reposilite.repository;
 
-import org.apache.commons.io.FileUtils;
 import org.panda_lang.reposilite.Reposilite;
 import org.panda_lang.reposilite.ReposiliteContext;
 import org.panda_lang.reposilite.auth.Permission;
@@ -24,39 +23,48 @@ import org.panda_lang.reposilite.auth.Session;
 import org.panda_lang.reposilite.error.ErrorDto;
 import org.panda_lang.reposilite.error.ResponseUtils;
 import org.panda_lang.reposilite.repository.IRepository.View;
+import org.panda_lang.reposilite.utils.HashFunction;
 import org.panda_lang.utilities.commons.function.Result;
 
 import java.io.File;
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 
 import static org.apache.http.HttpStatus.*;
 
 final class LookupService {
     private final MetadataService metadataService;
-    private final IRepositoryManager repos;
+    private final RepositoryManager repos;
     private final ProxyService proxy;
+    private final NegativeCache negativeCache;
 
     LookupService(
             MetadataService metadataService,
-            IRepositoryManager repos,
-            ProxyService proxy) {
+            RepositoryManager repos,
+            ProxyService proxy,
+            NegativeCache negativeCache) {
         this.metadataService = metadataService;
         this.repos = repos;
         this.proxy = proxy;
+        this.negativeCache = negativeCache;
     }
 
-    Result<LookupResponse, ErrorDto> findFile(ReposiliteContext context) {
+    /*
+     * Local lookups complete right away, only misses that go to a proxy complete later,
+     * once the upstream answered, on one of the proxy threads.
+     */
+    CompletableFuture<Result<LookupResponse, ErrorDto>> findFile(ReposiliteContext context) {
         String filepath = context.filepath();
         if (filepath.isEmpty())
-            return ResponseUtils.error(SC_NON_AUTHORITATIVE_INFORMATION, "Unsupported request");
+            return done(ResponseUtils.error(SC_NON_AUTHORITATIVE_INFORMATION, "Unsupported request"));
 
         if (filepath.charAt(filepath.length() - 1) != '/') {
             for (IRepository repo : context.repos()) {
                 if (repo.isDirectory(context.filepath()))
-                    return ResponseUtils.error(SC_MOVED_TEMPORARILY, context.uri() + '/');
+                    return done(ResponseUtils.error(SC_MOVED_TEMPORARILY, context.uri() + '/'));
             }
         }
 
@@ -66,38 +74,50 @@ final class LookupService {
         if (context.repos().size() == 1) {
             IRepository repo = context.repos().get(0);
             if (repo == null)
-                return ResponseUtils.error(SC_NOT_FOUND, "Can not find repo at: " + context.uri());
+                return done(ResponseUtils.error(SC_NOT_FOUND, "Can not find repo at: " + context.uri()));
 
             if (!repo.canContain(context.filepath()))
-                return ResponseUtils.error(SC_NOT_FOUND, "Impossible artifact");
+                return done(ResponseUtils.error(SC_NOT_FOUND, "Impossible artifact"));
 
             return findFile(context, parts, isMeta, context.view(), null, context.repos(), 0, repo);
         }
 
-        List<IRepository> filtered = null;
-        for (IRepository repo : context.repos()) {
-            if (!repo.canContain(context.filepath()))
-                continue;
-
-            if (filtered == null)
-                filtered = new ArrayList<>();
-            filtered.add(repo);
-        }
-
+        List<IRepository> filtered = repos.filterContaining(context.repos(), context.filepath());
         if (filtered == null)
-            return ResponseUtils.error(SC_NOT_FOUND, "Can not find repo at: " + context.uri());
+            return done(ResponseUtils.error(SC_NOT_FOUND, "Can not find repo at: " + context.uri()));
+
+        if (filtered.size() > 1 && !isMeta) {
+            HashFunction function = metadataHash(parts[parts.length - 1]);
+            if (function != null && parts.length > 1) {
+                // The checksum of the merged document, the ones in each repository are of their own file only
+                int suffix = function.getExtension().length() + 1;
+                String metaKey = context.sanitized().substring(0, context.sanitized().length() - suffix);
+                String metaPath = filepath.substring(0, filepath.length() - suffix);
+                String hash = metadataService.mergeMetadataHash(metaKey, metaPath, context.view(), filtered, function);
+                if (hash != null) // Changes whenever the document does, so its tag can be the hash itself
+                    return done(Result.ok(new LookupResponse("text/plain", hash.getBytes(StandardCharsets.UTF_8), EntityTag.of(hash))));
+            }
+        }
 
-        // TODO: File hashes
         if (filtered.size() > 1 && isMeta) {
-            byte[] meta = metadataService.mergeMetadata(context.sanitized(), context.filepath(), context.view(), filtered);
+            for (IRepository repo : filtered) {
+                if (context.view() == View.ALL) {
+                    revalidate(repo, View.RELEASES, filepath);
+                    revalidate(repo, View.SNAPSHOTS, filepath);
+                } else {
+                    revalidate(repo, context.view(), filepath);
+                }
+            }
+
+            LookupResponse meta = metadataService.mergeMetadataResponse(context.sanitized(), context.filepath(), context.view(), filtered);
             if (meta != null)
-                return Result.ok(new LookupResponse("text/xml", meta));
+                return done(Result.ok(meta));
         }
 
         return findFile(context, parts, isMeta, context.view(), filtered.size() > 1 ? new HashSet<>() : null, filtered, 0, null);
     }
 
-    private Result<LookupResponse, ErrorDto> findFile(ReposiliteContext context, String[] parts, boolean isMeta, View view, Set<String> visited, List<IRepository> repos, int index, IRepository repo) {
+    private CompletableFuture<Result<LookupResponse, ErrorDto>> findFile(ReposiliteContext context, String[] parts, boolean isMeta, View view, Set<String> visited, List<IRepository> repos, int index, IRepository repo) {
         if (repo == null)
             repo = repos.get(index);
 
@@ -105,49 +125,53 @@ final class LookupService {
             Result<Session, String> auth = context.session('/' + repo.getName() + '/' + context.filepath());
             if (auth.isErr() || !auth.get().hasAnyPermission(Permission.READ, Permission.WRITE, Permission.MANAGER)) {
                 if (context.repos().size() != 1)
-                    return ResponseUtils.error(SC_NOT_FOUND, "File not found");
-                return ResponseUtils.error(SC_UNAUTHORIZED, "Unauthorized request");
+                    return done(ResponseUtils.error(SC_NOT_FOUND, "File not found"));
+                return done(ResponseUtils.error(SC_UNAUTHORIZED, "Unauthorized request"));
             }
         }
 
+        boolean missing = negativeCache.isMissing(repo, view, context.filepath());
+
         File file = null;
-        if (view == View.ALL) {
+        View found = view;
+        if (missing) {
+            // Known to not be here, skip straight to the delegate and the next repository
+        } else if (view == View.ALL) {
+            found = View.RELEASES;
             file = repo.getFile(View.RELEASES, context.filepath());
-            if (!file.exists())
+            if (!file.exists()) {
+                found = View.SNAPSHOTS;
                 file = repo.getFile(View.SNAPSHOTS, context.filepath());
+            }
         } else {
             file = repo.getFile(view, context.filepath());
         }
 
         // TODO: Hash file extensions
-        if (!file.exists()) {
+        if (file == null || !file.exists()) {
             if (isMeta) {
                 if (parts.length == 1) // Must at least have a group in order to potentially exist
-                    return ResponseUtils.error(SC_NOT_FOUND, "Missing group identifier");
-                return findProxy(context, parts, isMeta, view, visited, repos, index, repo);
+                    return done(ResponseUtils.error(SC_NOT_FOUND, "Missing group identifier"));
+                return findProxy(context, parts, isMeta, view, visited, repos, index, repo, missing);
             }
 
             // Must at least have 4 segments: group/artifact/version/file
             if (parts.length < 4)
-                return ResponseUtils.error(SC_NOT_FOUND, "Invalid artifact path");
-            return findProxy(context, parts, isMeta, view, visited, repos, index, repo);
+                return done(ResponseUtils.error(SC_NOT_FOUND, "Invalid artifact path"));
+            return findProxy(context, parts, isMeta, view, visited, repos, index, repo, missing);
         }
 
         if (file.isDirectory())
-            return ResponseUtils.error(SC_OK, "Directory access"); // TODO: Better way to say 'serve the frontend'
+            return done(ResponseUtils.error(SC_OK, "Directory access")); // TODO: Better way to say 'serve the frontend'
 
+        revalidate(repo, found, context.filepath());
         FileDetailsDto fileDetails = FileDetailsDto.of(file);
 
-        if (!context.method().equals("HEAD")) { //TODO: Cache in memory?
-            final File f = file;
-            context.result(outputStream -> FileUtils.copyFile(f, outputStream));
-        }
-
         Reposilite.getLogger().debug("RESOLVED " + file.getPath() + "; mime: " + fileDetails.getContentType() + "; size: " + file.length());
-        return Result.ok(new LookupResponse(fileDetails));
+        return done(Result.ok(new LookupResponse(fileDetails, file)));
     }
 
-    private Result<LookupResponse, ErrorDto> findProxy(ReposiliteContext context, String[] parts, boolean isMeta, View view, Set<String> visited, List<IRepository> repos, int index, IRepository repo) {
+    private CompletableFuture<Result<LookupResponse, ErrorDto>> findProxy(ReposiliteContext context, String[] parts, boolean isMeta, View view, Set<String> visited, List<IRepository> repos, int index, IRepository repo, boolean missing) {
         if (repo.getDelegate() != null) {
             IRepository delegate = this.repos.getRepo(repo.getDelegate());
             if (delegate != null) {
@@ -157,6 +181,9 @@ final class LookupService {
         }
 
         if (repo.getProxies().isEmpty()) {
+            if (!missing)
+                negativeCache.missing(repo, view, context.filepath());
+
             if (visited != null) {
                 while (index < repos.size() - 1) {
                     IRepository next = repos.get(++index);
@@ -164,9 +191,38 @@ final class LookupService {
                         return findFile(context, parts, isMeta, view, visited, repos, index, next);
                 }
             }
-            return ResponseUtils.error(SC_NOT_FOUND, "File not found");
+            return done(ResponseUtils.error(SC_NOT_FOUND, "File not found"));
         }
 
-        return proxy.findProxied(context, repo, parts);
+        if (missing) // Our proxies didn't have it either, last time we asked
+            return done(ResponseUtils.error(SC_NOT_FOUND, "Artifact not found in local and remote repository"));
+
+        return proxy.findProxied(context, repo, parts).thenApply(result -> {
+            if (result.isErr() && result.getError().getStatus() == SC_NOT_FOUND)
+                negativeCache.missing(repo, view, context.filepath());
+            return result;
+        });
+    }
+
+    // The function of a checksum of maven-metadata.xml, or null if it's something else
+    private static HashFunction metadataHash(String name) {
+        if (!name.startsWith("maven-metadata.xml."))
+            return null;
+
+        for (HashFunction function : HashFunction.values()) {
+            if (name.length() == "maven-metadata.xml.".length() + function.getExtension().length() && name.endsWith(function.getExtension()))
+                return function;
+        }
+        return null;
+    }
+
+    // Stale proxied files are served as they are, while their upstream is asked whether they changed
+    private void revalidate(IRepository repo, View view, String path) {
+        if (repo.getRevalidateTtl() > 0 && !repo.getProxies().isEmpty() && UpstreamValidators.isMutable(path))
+            proxy.revalidate(repo, view, path);
+    }
+
+    private static CompletableFuture<Result<LookupResponse, ErrorDto>> done(Result<LookupResponse, ErrorDto> result) {
+        return CompletableFuture.completedFuture(result);
     }
 }
@@ -16,6 +16,10 @@
 
 package org.panda_lang.reposilite.repository;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalNotification;
 import org.apache.maven.artifact.repository.metadata.Metadata;
 import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader;
 import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer;
@@ -24,6 +28,8 @@ import org.panda_lang.reposilite.Reposilite;
 import org.panda_lang.reposilite.ReposiliteConfiguration;
 import org.panda_lang.reposilite.console.ReposiliteCommand;
 import org.panda_lang.reposilite.repository.IRepository.View;
+import org.panda_lang.reposilite.utils.FilesUtils;
+import org.panda_lang.reposilite.utils.HashFunction;
 
 import picocli.CommandLine.Command;
 
@@ -33,22 +39,51 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
 
 public final class MetadataService implements ReposiliteConfiguration {
+    private static final long DEFAULT_CACHE_BYTES = 32L * 1024 * 1024;
+
     private final MetadataXpp3Reader XML_READER = new MetadataXpp3Reader();
     private final MetadataXpp3Writer XML_WRITER = new MetadataXpp3Writer();
 
-    //TODO: Threading issues? Use Concurrent maps?
-    private final Map<String, CacheEntry> cache = new HashMap<>();
-    private final Map<String, List<CacheEntry>> cacheInputs = new HashMap<>();
+    // Merged documents by request path, weighed by their size
+    private final Cache<String, CacheEntry> cache;
+    // Entries by the absolute path of each file they were merged from, so changing a file clears whatever it's part of
+    private final Map<String, Set<CacheEntry>> cacheInputs = new ConcurrentHashMap<>();
+    private final AtomicLong cacheBytes = new AtomicLong();
+    // Parsed maven-metadata.xml files by their absolute path, weighed by an estimate of their object tree
+    private final Cache<String, ParsedInput> parsed;
+    private final AtomicLong clears = new AtomicLong();
+    private final long maxCacheBytes;
     private final BiConsumer<String, Exception> errorHandler;
 
     public MetadataService(BiConsumer<String, Exception> errorHandler) {
+        this(errorHandler, DEFAULT_CACHE_BYTES);
+    }
+
+    public MetadataService(BiConsumer<String, Exception> errorHandler, long maxCacheBytes) {
         this.errorHandler = errorHandler;
+        this.maxCacheBytes = maxCacheBytes;
+        // One budget for both, half of it each, so neither can take memory the other was given
+        long mergedBytes = Math.max(0, maxCacheBytes / 2);
+        long parsedBytes = Math.max(0, maxCacheBytes - mergedBytes);
+
+        this.cache = CacheBuilder.newBuilder()
+            .maximumWeight(mergedBytes)
+            .weigher((String key, CacheEntry entry) -> entry.weight())
+            .removalListener(this::onRemoval)
+            .recordStats()
+            .build();
+        this.parsed = CacheBuilder.newBuilder()
+            .maximumWeight(parsedBytes)
+            .weigher((String path, ParsedInput input) -> input.weight())
+            .build();
     }
 
     /*
@@ -65,17 +100,37 @@ public final class MetadataService implements ReposiliteConfiguration {
      *     This I dont think we can generate... So request from the proxy, or 404
      */
     public byte[] mergeMetadata(String key, String filepath, View view, List<IRepository> repos) {
+        CacheEntry entry = merged(key, filepath, view, repos);
+        return entry == null ? null : entry.data;
+    }
+
+    // Same as mergeMetadata, tagged with the SHA-1 it was cached with, so requests don't hash it again
+    LookupResponse mergeMetadataResponse(String key, String filepath, View view, List<IRepository> repos) {
+        CacheEntry entry = merged(key, filepath, view, repos);
+        return entry == null ? null : new LookupResponse("text/xml", entry.data, EntityTag.of(entry.hashes[HashFunction.SHA1.ordinal()]));
+    }
+
+    /*
+     * Checksum of what mergeMetadata returns for the same arguments. Clients verify the merged document against
+     * these, the ones next to the files in each repository only match that single file.
+     */
+    public String mergeMetadataHash(String key, String filepath, View view, List<IRepository> repos, HashFunction function) {
+        CacheEntry entry = merged(key, filepath, view, repos);
+        return entry == null ? null : entry.hashes[function.ordinal()];
+    }
+
+    private CacheEntry merged(String key, String filepath, View view, List<IRepository> repos) {
         if (!filepath.endsWith("/maven-metadata.xml"))
             throw new IllegalArgumentException("Invalid maven-metadata.xml filename: " + filepath);
 
-        CacheEntry cached = cache.get(key);
+        CacheEntry cached = cache.getIfPresent(key);
         if (cached != null)
-            return cached.data;
+            return cached;
 
         // As there is no way to tell if a path is an actual artifact from the url, we need to check if
         // a metadata file already exists. This way we don't create metadata files for directory listings.
         List<String> inputs = new ArrayList<>();
-        List<File> existing = new ArrayList<>();
+        List<File> files = new ArrayList<>();
         List<View> views = new ArrayList<>();
 
         if (view == View.SNAPSHOTS)
@@ -91,17 +146,47 @@ public final class MetadataService implements ReposiliteConfiguration {
             for (View v : views) {
                 File meta = repo.getFile(v, filepath);
                 inputs.add(meta.getAbsolutePath());
-                if (meta.exists())
-                    existing.add(meta);
+                files.add(meta);
             }
         }
 
+        // Listen for changes before reading anything, a file changed while we're merging clears this entry
+        CacheEntry entry = new CacheEntry(key, inputs);
+        register(entry);
+
+        try {
+            byte[] data = merge(key, files);
+            if (data == null)
+                return null;
+
+            entry.fill(data);
+            cacheBytes.addAndGet(entry.weight());
+            cache.put(key, entry);
+
+            // Cleared while it was merged, it may contain what was just replaced
+            if (entry.invalidated)
+                cache.asMap().remove(key, entry);
+
+            return entry;
+        } finally {
+            if (entry.data == null)
+                unregister(entry);
+        }
+    }
+
+    private byte[] merge(String key, List<File> files) {
+        List<File> existing = new ArrayList<>();
+        for (File file : files) {
+            if (file.exists())
+                existing.add(file);
+        }
+
         if (existing.isEmpty())
             return null;
 
         if (existing.size() == 1) {
             try {
-                return addCache(key, Files.readAllBytes(existing.get(0).toPath()), inputs);
+                return Files.readAllBytes(existing.get(0).toPath());
             } catch (IOException e) {
                 return null; // TODO: Actually do something about this error?
             }
@@ -110,16 +195,15 @@ public final class MetadataService implements ReposiliteConfiguration {
         Metadata ret = null;
 
         for (File path : existing) {
-            try (FileInputStream fis = new FileInputStream(path)) {
-                Metadata input = XML_READER.read(fis);
-                if (ret == null)
-                    ret = input;
-                else
-                    ret.merge(input);
-            } catch (IOException | XmlPullParserException e) {
-                errorHandler.accept("Error parsing " + path.getAbsolutePath(), e);
+            Metadata input = parse(path);
+            if (input == null)
                 return null; // TODO: Actually do something about this error?
-            }
+
+            // Merging changes both sides, the parsed inputs are kept for the next merge as they were read
+            if (ret == null)
+                ret = input.clone();
+            else
+                ret.merge(input.clone());
         }
 
         ByteArrayOutputStream bos = new ByteArrayOutputStream();
@@ -131,46 +215,103 @@ public final class MetadataService implements ReposiliteConfiguration {
             return null;
         }
 
-        return addCache(key, bos.toByteArray(), inputs);
+        return bos.toByteArray();
+    }
+
+    /*
+     * Inputs are parsed once and kept until the file changes, so when a single repository changes
+     * its maven-metadata.xml only that one is read again for the next merge.
+     */
+    private Metadata parse(File file) {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        ParsedInput known = parsed.getIfPresent(path);
+        if (known != null && known.lastModified == lastModified && known.length == length)
+            return known.metadata;
+
+        long cleared = clears.get();
+        try (FileInputStream fis = new FileInputStream(file)) {
+            Metadata metadata = XML_READER.read(fis);
+            // A file cleared while we read it may have been replaced halfway through
+            if (clears.get() == cleared)
+                parsed.put(path, new ParsedInput(lastModified, length, metadata));
+            return metadata;
+        } catch (IOException | XmlPullParserException e) {
+            errorHandler.accept("Error parsing " + path, e);
+            return null;
+        }
+    }
+
+    private void register(CacheEntry entry) {
+        for (String input : entry.inputs) {
+            cacheInputs.compute(input, (path, entries) -> {
+                Set<CacheEntry> value = entries == null ? ConcurrentHashMap.newKeySet() : entries;
+                value.add(entry);
+                return value;
+            });
+        }
     }
 
-    private byte[] addCache(String key, byte[] data, List<String> inputs) {
-        CacheEntry entry = new CacheEntry(key, data, inputs);
-        cache.put(key, entry);
-        for (String input : inputs)
-            cacheInputs.computeIfAbsent(input, k -> new ArrayList<>()).add(entry);
+    private void unregister(CacheEntry entry) {
+        for (String input : entry.inputs) {
+            cacheInputs.computeIfPresent(input, (path, entries) -> {
+                entries.remove(entry);
+                return entries.isEmpty() ? null : entries;
+            });
+        }
+    }
+
+    private void onRemoval(RemovalNotification<String, CacheEntry> notification) {
+        CacheEntry entry = notification.getValue();
+        if (entry == null)
+            return;
 
-        return data;
+        cacheBytes.addAndGet(-entry.weight());
+        unregister(entry);
     }
 
     public void clearMetadata(File file) {
-        String key = file.getAbsolutePath();
-        List<CacheEntry> entries = cacheInputs.remove(key);
-        if (entries != null) {
-            for (CacheEntry ent : entries) {
-                cache.remove(ent.path);
-                ent.inputs.remove(key);
-                for (String input : ent.inputs) {
-                    List<CacheEntry> child = cacheInputs.get(input);
-                    if (child != null) {
-                        child.remove(ent);
-                        if (child.isEmpty())
-                            cacheInputs.remove(input);
-                    }
-                }
-            }
+        clears.incrementAndGet();
+        parsed.invalidate(file.getAbsolutePath());
+
+        Set<CacheEntry> entries = cacheInputs.remove(file.getAbsolutePath());
+        if (entries == null)
+            return;
+
+        for (CacheEntry entry : entries) {
+            entry.invalidated = true;
+            cache.asMap().remove(entry.key, entry);
+            unregister(entry); // Entries still being merged aren't in the cache yet, and have no removal to do this
         }
     }
 
     public int purgeCache() {
         int count = getCacheSize();
-        cache.clear();
-        cacheInputs.clear();
+        cache.invalidateAll();
+        parsed.invalidateAll();
         return count;
     }
 
     public int getCacheSize() {
-        return cache.size();
+        cache.cleanUp();
+        return (int) cache.size();
+    }
+
+    public long getCacheBytes() {
+        return cacheBytes.get();
+    }
+
+    public CacheStats getCacheStats() {
+        return cache.stats();
+    }
+
+    @Override
+    public String toString() {
+        CacheStats stats = getCacheStats();
+        return "MetadataCache[entries: " + getCacheSize() + ", size: " + FilesUtils.bytesToDisplay(getCacheBytes()) + "/" + FilesUtils.bytesToDisplay(maxCacheBytes)
+            + ", hits: " + stats.hitCount() + ", misses: " + stats.missCount() + ", evictions: " + stats.evictionCount() + "]";
     }
 
     @Override
@@ -186,14 +327,56 @@ public final class MetadataService implements ReposiliteConfiguration {
         reposilite.getConsole().registerCommand(new PurgeCommand());
     }
 
-    private static class CacheEntry {
-        final String path;
-        final byte[] data;
-        final List<String> inputs;
-        private CacheEntry(String path, byte[] data, List<String> inputs)  {
-            this.path = path;
-            this.data = data;
+    private static final class ParsedInput {
+        private static final int OVERHEAD = 64;
+        // Every element is an object, and its text a UTF-16 string, a parsed file takes a few times its size
+        private static final int EXPANSION = 4;
+
+        private final long lastModified;
+        private final long length;
+        private final Metadata metadata;
+
+        private ParsedInput(long lastModified, long length, Metadata metadata) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.metadata = metadata;
+        }
+
+        private int weight() {
+            return (int) Math.min(Integer.MAX_VALUE, OVERHEAD + length * EXPANSION);
+        }
+    }
+
+    private static final class CacheEntry {
+        private static final HashFunction[] HASH_FUNCTIONS = HashFunction.values();
+        private static final int OVERHEAD = 64; // Roughly what the entry, its key and the maps take besides the document
+
+        private final String key;
+        private final List<String> inputs;
+        private volatile byte[] data;
+        private volatile String[] hashes; // By HashFunction ordinal
+        private volatile boolean invalidated;
+
+        private CacheEntry(String key, List<String> inputs) {
+            this.key = key;
             this.inputs = inputs;
         }
+
+        // Hashed once here, instead of on every request for a checksum
+        private void fill(byte[] data) {
+            String[] hashes = new String[HASH_FUNCTIONS.length];
+            for (HashFunction function : HASH_FUNCTIONS)
+                hashes[function.ordinal()] = function.hash(data);
+
+            this.hashes = hashes;
+            this.data = data;
+        }
+
+        private int weight() {
+            int weight = OVERHEAD + key.length() * 2 + data.length;
+            for (String hash : hashes)
+                weight += hash.length() * 2;
+            return weight;
+        }
     }
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.panda_lang.reposilite.repository.IRepository.View;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Remembers paths a repository recently did not have, neither on disk nor in any of its proxies.
+ * Build tools probe lots of things that don't exist (-sources, -javadoc, classifiers...), and
+ * every one of those would otherwise hit the disk of every repo in the view and every upstream.
+ *
+ * Each repository has its own bounded cache with the time to live from its config, repositories
+ * with a ttl of 0 are not cached at all. Storing a file in a repository removes it from its cache.
+ */
+final class NegativeCache {
+    private static final int MAX_ENTRIES = 10_000;
+    private static final View[] VIEWS = View.values();
+
+    private final Map<IRepository, Cache<String, Boolean>> caches = new HashMap<>();
+
+    NegativeCache(Collection<? extends IRepository> repos) {
+        for (IRepository repo : repos) {
+            if (repo.getNegativeCacheTtl() <= 0)
+                continue;
+
+            this.caches.put(repo, CacheBuilder.newBuilder()
+                .maximumSize(MAX_ENTRIES)
+                .expireAfterWrite(repo.getNegativeCacheTtl(), TimeUnit.SECONDS)
+                .recordStats()
+                .build());
+        }
+    }
+
+    private static String key(View view, String path) {
+        return view.ordinal() + path;
+    }
+
+    boolean isMissing(IRepository repo, View view, String path) {
+        Cache<String, Boolean> cache = this.caches.get(repo);
+        return cache != null && cache.getIfPresent(key(view, path)) != null;
+    }
+
+    void missing(IRepository repo, View view, String path) {
+        Cache<String, Boolean> cache = this.caches.get(repo);
+        if (cache != null)
+            cache.put(key(view, path), Boolean.TRUE);
+    }
+
+    // Stored files can show up in any view, so forget all of them
+    void invalidate(IRepository repo, String path) {
+        Cache<String, Boolean> cache = this.caches.get(repo);
+        if (cache == null)
+            return;
+
+        for (View view : VIEWS)
+            cache.invalidate(key(view, path));
+    }
+
+    long size() {
+        long size = 0;
+        for (Cache<String, Boolean> cache : this.caches.values())
+            size += cache.size();
+        return size;
+    }
+
+    long getHitCount() {
+        long hits = 0;
+        for (Cache<String, Boolean> cache : this.caches.values())
+            hits += cache.stats().hitCount();
+        return hits;
+    }
+
+    @Override
+    public String toString() {
+        return "NegativeCache[repositories: " + this.caches.size() + ", size: " + size() + ", hits: " + getHitCount() + "]";
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/*
+ * Path segment trie of repository prefixes, so routing is linear in the length of
+ * the requested path instead of the number of configured prefixes.
+ *
+ * Matching is identical to String.startsWith on the original prefixes. A prefix is
+ * stored as its complete segments (every part followed by a '/') as edges, and the
+ * remainder after the last '/' as a 'tail' on the final node. Prefixes ending in '/'
+ * have an empty tail, which matches anything below that node.
+ */
+final class PrefixTrie<T> {
+    private final Node<T> root = new Node<>();
+    private int size = 0;
+
+    void add(String prefix, T value) {
+        Node<T> node = root;
+        int start = 0;
+        int end;
+        while ((end = prefix.indexOf('/', start)) != -1) {
+            node = node.children.computeIfAbsent(prefix.substring(start, end), k -> new Node<>());
+            start = end + 1;
+        }
+        node.tails.add(new Tail<>(prefix.substring(start), value));
+        size++;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /*
+     * Returns true if any prefix in this trie is a prefix of the path.
+     */
+    boolean matches(String path) {
+        Node<T> node = root;
+        int start = 0;
+        while (node != null) {
+            for (Tail<T> tail : node.tails) {
+                if (path.startsWith(tail.value, start))
+                    return true;
+            }
+            node = next(node, path, start);
+            if (node != null)
+                start = path.indexOf('/', start) + 1;
+        }
+        return false;
+    }
+
+    /*
+     * Passes the value of every prefix that is a prefix of the path to the consumer.
+     */
+    void collect(String path, Consumer<T> consumer) {
+        Node<T> node = root;
+        int start = 0;
+        while (node != null) {
+            for (Tail<T> tail : node.tails) {
+                if (path.startsWith(tail.value, start))
+                    consumer.accept(tail.data);
+            }
+            node = next(node, path, start);
+            if (node != null)
+                start = path.indexOf('/', start) + 1;
+        }
+    }
+
+    /*
+     * Returns true if the path is a directory above some prefix, which means that
+     * at least one prefix starts with the path followed by a '/'.
+     */
+    boolean isDirectory(String path) {
+        Node<T> node = root;
+        int start = 0;
+        int end;
+        while ((end = path.indexOf('/', start)) != -1) {
+            node = node.children.get(path.substring(start, end));
+            if (node == null)
+                return false;
+            start = end + 1;
+        }
+        return node.children.containsKey(path.substring(start));
+    }
+
+    // Follows the segment starting at 'start', only if it is terminated by a '/'
+    private static <T> Node<T> next(Node<T> node, String path, int start) {
+        if (node.children.isEmpty())
+            return null;
+        int end = path.indexOf('/', start);
+        return end == -1 ? null : node.children.get(path.substring(start, end));
+    }
+
+    private static final class Node<T> {
+        private final Map<String, Node<T>> children = new HashMap<>();
+        private final List<Tail<T>> tails = new ArrayList<>(1);
+    }
+
+    private static final class Tail<T> {
+        private final String value;
+        private final T data;
+
+        private Tail(String value, T data) {
+            this.value = value;
+            this.data = data;
+        }
+    }
+}
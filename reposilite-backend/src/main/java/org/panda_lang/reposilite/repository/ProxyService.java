@@ -16,12 +16,8 @@
 
 package org.panda_lang.reposilite.repository;
 
-import com.google.api.client.http.GenericUrl;
-import com.google.api.client.http.HttpHeaders;
-import com.google.api.client.http.HttpRequest;
-import com.google.api.client.http.HttpRequestFactory;
-import com.google.api.client.http.HttpResponse;
-import com.google.api.client.http.javanet.NetHttpTransport;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.apache.commons.io.FileUtils;
 import org.apache.http.HttpStatus;
 import org.panda_lang.reposilite.Reposilite;
@@ -29,137 +25,641 @@ import org.panda_lang.reposilite.ReposiliteContext;
 import org.panda_lang.reposilite.ReposiliteException;
 import org.panda_lang.reposilite.error.ErrorDto;
 import org.panda_lang.reposilite.error.ResponseUtils;
+import org.panda_lang.reposilite.repository.IRepository.ProxyStrategy;
+import org.panda_lang.reposilite.repository.IRepository.View;
+import org.panda_lang.reposilite.repository.UpstreamTransport.Request;
+import org.panda_lang.reposilite.repository.UpstreamTransport.Response;
+import org.panda_lang.reposilite.utils.Checksums;
+import org.panda_lang.reposilite.utils.FilesUtils;
+import org.panda_lang.reposilite.utils.HashFunction;
 import org.panda_lang.utilities.commons.function.Result;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.SocketTimeoutException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.BiConsumer;
+import java.util.function.Function;
 
 final class ProxyService {
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final double HEDGE_PERCENTILE = 95;
+    private static final long DEFAULT_HEDGE_DELAY = 1000; // Until we know how long a proxy usually takes
+    private static final int MAX_HEAD_ENTRIES = 10_000;
+
     private final int proxyConnectTimeout;
     private final int proxyReadTimeout;
     private final ExecutorService ioService;
+    private final ExecutorService raceService; // Never the proxy pool, its threads wait for these
     private final IRepositoryManager repos;
     private final BiConsumer<String, Exception> errorHandler;
-    private final HttpRequestFactory httpRequestFactory;
+    private final UpstreamTransport transport;
+    private final Map<String, Flight> inFlight = new ConcurrentHashMap<>();
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+    private final Function<String, UpstreamHealth> upstreams;
+    // What upstreams recently said about files we only sent a HEAD for, null if disabled
+    private final Cache<String, Result<LookupResponse, ErrorDto>> heads;
 
     public ProxyService(
             IRepositoryManager repos,
             int proxyConnectTimeout,
             int proxyReadTimeout,
+            int headCacheTtl,
             ExecutorService ioService,
+            ExecutorService raceService,
+            UpstreamTransport transport,
+            Function<String, UpstreamHealth> upstreams,
             BiConsumer<String, Exception> errorHandler) {
         this.repos = repos;
         this.proxyConnectTimeout = proxyConnectTimeout;
         this.proxyReadTimeout = proxyReadTimeout;
         this.ioService = ioService;
+        this.raceService = raceService;
+        this.upstreams = upstreams;
         this.errorHandler = errorHandler;
-        this.httpRequestFactory = new NetHttpTransport().createRequestFactory();
+        this.transport = transport;
+        this.heads = headCacheTtl <= 0 ? null : CacheBuilder.newBuilder()
+            .maximumSize(MAX_HEAD_ENTRIES)
+            .expireAfterWrite(headCacheTtl, TimeUnit.SECONDS)
+            .build();
     }
 
-    Result<LookupResponse, ErrorDto> findProxied(ReposiliteContext context, IRepository repo, String[] pathParts) {
-        Collection<String> proxies = repo.getProxies();
-
+    /*
+     * Runs on the proxy threads, the returned future completes once an upstream answered,
+     * so nothing waits on the upstream while it's being asked.
+     *
+     * Concurrent misses for the same file share one fetch, and get what the first one got: the artifact is streamed
+     * from the upstream to all of them while it's being stored. Those too late to follow it get the stored file.
+     *
+     * HEAD requests only send a HEAD upstream, and what it answered is remembered for a short while,
+     * since build tools ask for the same files over and over to see if they're up to date.
+     */
+    CompletableFuture<Result<LookupResponse, ErrorDto>> findProxied(ReposiliteContext context, IRepository repo, String[] pathParts) {
         // /groupId/artifactId/<content>
         if (pathParts.length < 3)
-            return Result.error(new ErrorDto(HttpStatus.SC_NOT_FOUND, "Invalid proxied request"));
+            return CompletableFuture.completedFuture(Result.error(new ErrorDto(HttpStatus.SC_NOT_FOUND, "Invalid proxied request")));
+
+        // A GET can answer a HEAD, but not the other way around
+        boolean head = "HEAD".equals(context.method());
+        String key = key(repo, context.view(), context.filepath());
+
+        if (head && heads != null) {
+            Result<LookupResponse, ErrorDto> known = heads.getIfPresent(key);
+            if (known != null)
+                return CompletableFuture.completedFuture(known);
+        }
+
+        Flight existing = inFlight.get(key);
+        if (existing == null && head)
+            existing = inFlight.get("HEAD " + key);
+        if (existing != null)
+            return join(existing, key);
+
+        Flight flight = new Flight(head ? "HEAD " + key : key);
+        existing = inFlight.putIfAbsent(flight.key, flight);
+        if (existing != null)
+            return join(existing, key);
+
+        return fetchAsync(context, repo, pathParts, flight).whenComplete((result, throwable) -> {
+            Result<LookupResponse, ErrorDto> answer = throwable != null
+                ? ResponseUtils.error(HttpStatus.SC_BAD_GATEWAY, "Error while resolving proxied artifact")
+                : result;
+            flight.answered.complete(answer);
+
+            // Streamed downloads land once they were stored, or failed
+            if (throwable != null || !flight.streaming)
+                land(flight, answer);
+
+            if (head && result != null)
+                remember(key, result);
+        });
+    }
+
+    // Only what the upstreams actually said, not that they couldn't be asked
+    private void remember(String key, Result<LookupResponse, ErrorDto> result) {
+        if (heads != null && (result.isOk() || result.getError().getStatus() == HttpStatus.SC_NOT_FOUND))
+            heads.put(key, result);
+    }
+
+    /*
+     * Joined requests get the same answer as the first one, so they follow the same download. Responses are sent
+     * with async I/O, the thread completing the flight only starts those of the joined requests.
+     */
+    private CompletableFuture<Result<LookupResponse, ErrorDto>> join(Flight flight, String key) {
+        Reposilite.getLogger().debug("JOINED proxied fetch of " + key);
+        return flight.answered;
+    }
+
+    private static String key(IRepository repo, View view, String path) {
+        return repo.getName() + '/' + view.ordinal() + '/' + path;
+    }
+
+    private void land(Flight flight, Result<LookupResponse, ErrorDto> result) {
+        // Leave before completing, so anyone asking afterwards finds the stored file instead of a finished fetch
+        inFlight.remove(flight.key, flight);
+        flight.stored.complete(result);
+    }
+
+    /*
+     * Asks the upstream of a stored proxied file that may change, such as maven-metadata.xml or a SNAPSHOT,
+     * whether it did, once the file is older than the repository's revalidation ttl. It's asked in the background,
+     * with the validators it sent along with the file, and whoever wanted the file is served the stored one meanwhile.
+     */
+    void revalidate(IRepository repo, View view, String path) {
+        File validatorsFile = repo.getUpstreamFile(view, path);
+        long now = System.currentTimeMillis();
+        long checked = validatorsFile.lastModified(); // 0 if it doesn't exist, the file wasn't proxied
+
+        if (checked == 0 || checked + TimeUnit.SECONDS.toMillis(repo.getRevalidateTtl()) > now)
+            return;
+
+        String key = key(repo, view, path);
+        if (!revalidating.add(key))
+            return;
+
+        try {
+            ioService.execute(() -> {
+                try {
+                    // Checked now, if the upstream can't be reached it's asked again after another ttl
+                    if (validatorsFile.setLastModified(now))
+                        revalidate(repo, view, path, validatorsFile);
+                } finally {
+                    revalidating.remove(key);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            revalidating.remove(key); // Busy, the next request for it tries again
+        }
+    }
+
+    private void revalidate(IRepository repo, View view, String path, File validatorsFile) {
+        UpstreamValidators validators = UpstreamValidators.read(validatorsFile);
+        if (validators == null)
+            return;
+
+        // Only the upstream it came from can tell, if that's no longer one of our proxies the file stays as it is
+        String proxied = repo.getProxies().stream()
+            .filter(candidate -> validators.getUrl().equals(candidate + path))
+            .findFirst()
+            .orElse(null);
+        if (proxied == null)
+            return;
+
+        UpstreamHealth health = upstreams.apply(proxied);
+        UpstreamHealth.Permit permit = health.tryAcquire();
+        if (permit == null)
+            return;
+
+        long start = System.nanoTime();
+        Response remoteResponse;
+
+        try {
+            remoteResponse = validators.condition(prepare(proxied, path, false)).execute();
+        } catch (Exception exception) {
+            health.failure(permit);
+            Reposilite.getLogger().warn("Cannot revalidate " + path + ", proxied repository " + proxied + " is unavailable due to: " + exception.getMessage());
+            return;
+        }
 
+        int status = remoteResponse.getStatus();
+        if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+            health.failure(permit);
+            remoteResponse.close();
+            return;
+        }
+
+        health.success(permit, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+
+        String contentType = remoteResponse.getHeader("Content-Type");
+        if (status != HttpStatus.SC_OK || (contentType != null && contentType.startsWith("text/html"))) {
+            // Not modified, or gone upstream, in which case we keep what we have
+            Reposilite.getLogger().debug("REVALIDATED " + path + " in " + repo + ", " + status + " from " + proxied);
+            remoteResponse.close();
+            return;
+        }
+
+        long contentLength = remoteResponse.getContentLength() < 0 || remoteResponse.getHeader("Content-Encoding") != null ? 0 : remoteResponse.getContentLength();
+
+        File part;
+        try {
+            part = createPart(repo.getFile(view, path));
+        } catch (IOException exception) {
+            remoteResponse.close();
+            Reposilite.getLogger().warn("Cannot revalidate " + path + " in " + repo + ": " + exception.getMessage());
+            return;
+        }
+
+        // Nobody follows this download or waits on its flight, the stored file is served until the new one replaced it
+        Flight flight = new Flight(key(repo, view, path));
+        streamThrough(repo, view, path, remoteResponse, contentLength, part, new StreamedDownload(part, flight.stored), flight);
+    }
+
+    private CompletableFuture<Result<LookupResponse, ErrorDto>> fetchAsync(ReposiliteContext context, IRepository repo, String[] pathParts, Flight flight) {
+        Collection<String> proxies = repo.getProxies();
         String path = context.filepath();
+        CompletableFuture<Result<LookupResponse, ErrorDto>> fetched = new CompletableFuture<>();
 
-        Future<Result<LookupResponse, ErrorDto>> future = ioService.submit(() -> {
-            for (String proxied : proxies) { // TODO: Rewrite all this
+        try {
+            ioService.execute(() -> {
                 try {
-                    // TODO: Check for HEAD request, so that a HEAD to us doesn't result in a full GET to them
-                    HttpRequest remoteRequest = httpRequestFactory.buildGetRequest(new GenericUrl(proxied + path));
-                    remoteRequest.setThrowExceptionOnExecuteError(false);
-                    remoteRequest.setConnectTimeout(proxyConnectTimeout * 1000);
-                    remoteRequest.setReadTimeout(proxyReadTimeout * 1000);
-                    HttpResponse remoteResponse = remoteRequest.execute();
-
-                    if (!remoteResponse.isSuccessStatusCode()) {
-                        continue;
-                    }
+                    fetched.complete(fetch(context, repo, proxies, path, pathParts, flight));
+                } catch (Exception exception) {
+                    errorHandler.accept(path, new ReposiliteException("Error while resolving proxied artifact", exception));
+                    fetched.complete(ResponseUtils.error(HttpStatus.SC_BAD_GATEWAY, "Error while resolving proxied artifact"));
+                }
 
-                    HttpHeaders headers = remoteResponse.getHeaders();
+                // Whoever asked follows the download by now, it goes on on this thread without waiting for them
+                if (flight.transfer == null)
+                    return;
 
-                    //TODO: Detect 302 redirects to directory listing
-                    if ("text/html".equals(headers.getContentType())) {
-                        continue;
-                    }
+                try {
+                    flight.transfer.run();
+                } catch (RuntimeException | Error throwable) {
+                    // Lands on its own otherwise, those waiting for the stored file must not wait forever
+                    land(flight, ResponseUtils.error(HttpStatus.SC_BAD_GATEWAY, "Cannot download artifact from remote repository"));
+                    throw throwable;
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            // Every proxy thread is busy and enough requests wait for one already, don't pile up more
+            Reposilite.getLogger().warn("Proxy pool is full - Cannot fetch " + path);
+            return CompletableFuture.completedFuture(ResponseUtils.error(HttpStatus.SC_SERVICE_UNAVAILABLE, "Too many proxied requests, try again later"));
+        }
 
-                    long contentLength = headers.getContentLength() == null ? 0 : headers.getContentLength();
+        return fetched;
+    }
 
-                    FileDetailsDto fileDetails = new FileDetailsDto(FileDetailsDto.FILE, pathParts[pathParts.length - 1], "", remoteResponse.getContentType(), contentLength);
-                    LookupResponse response = new LookupResponse(fileDetails);
+    private Result<LookupResponse, ErrorDto> fetch(ReposiliteContext context, IRepository repo, Collection<String> proxies, String path, String[] pathParts, Flight flight) {
+        boolean head = "HEAD".equals(context.method());
+        AtomicBoolean answered = new AtomicBoolean(false);
+        Response remoteResponse = repo.getProxyStrategy() == ProxyStrategy.SEQUENTIAL || proxies.size() == 1
+            ? requestInOrder(proxies, path, head, answered)
+            : race(repo, new ArrayList<>(proxies), path, head, answered);
 
-                    if (context.method().equals("HEAD")) {
-                        return Result.ok(response);
-                    }
+        // Not a miss if nobody could tell, so it doesn't end up in the negative cache
+        if (remoteResponse == null && !answered.get())
+            return Result.error(new ErrorDto(HttpStatus.SC_BAD_GATEWAY, "Remote repositories are unavailable"));
 
-                    /*
-                    if (!storeProxied) {
-                        context.result(outputStream -> IOUtils.copyLarge(remoteResponse.getContent(), outputStream));
-                        return proxiedTask.complete(Result.ok(response));
-                    }
-                    */
+        if (remoteResponse == null)
+            return Result.error(new ErrorDto(HttpStatus.SC_NOT_FOUND, "Artifact not found in local and remote repository"));
+
+        // The length of an encoded body says nothing about the length of the file
+        long contentLength = remoteResponse.getContentLength() < 0 || remoteResponse.getHeader("Content-Encoding") != null ? 0 : remoteResponse.getContentLength();
+
+        FileDetailsDto fileDetails = new FileDetailsDto(FileDetailsDto.FILE, pathParts[pathParts.length - 1], "", remoteResponse.getHeader("Content-Type"), contentLength);
+
+        if (head) {
+            remoteResponse.close();
+            return Result.ok(new LookupResponse(fileDetails));
+        }
+
+        if (!repo.getQuota().hasSpace()) {
+            remoteResponse.close();
+            Reposilite.getLogger().warn("Out of disk space - Cannot store proxied artifact " + path);
+            // Not a miss, the upstream has it, so it's not remembered as one either
+            return ResponseUtils.error(HttpStatus.SC_INSUFFICIENT_STORAGE, "Out of disk space");
+        }
+
+        File part;
+        try {
+            part = createPart(repo.getFile(context.view(), path));
+        } catch (IOException exception) {
+            remoteResponse.close();
+            errorHandler.accept(path, new ReposiliteException("Cannot store proxied artifact " + path, exception));
+            return ResponseUtils.error(HttpStatus.SC_UNPROCESSABLE_ENTITY, "Cannot process artifact");
+        }
+
+        // Run by fetchAsync right after the response was handed out, it lands the flight whatever happens
+        StreamedDownload download = new StreamedDownload(part, flight.stored);
+        flight.streaming = true;
+        flight.transfer = () -> streamThrough(repo, context.view(), path, remoteResponse, contentLength, part, download, flight);
+        return Result.ok(new LookupResponse(fileDetails, download));
+    }
+
+    private static File createPart(File target) throws IOException {
+        FileUtils.forceMkdirParent(target);
+        return Files.createTempFile(target.getParentFile().toPath(), target.getName() + '.', FilesUtils.PARTIAL_SUFFIX).toFile();
+    }
+
+    private Response requestInOrder(Collection<String> proxies, String path, boolean head, AtomicBoolean answered) {
+        for (String proxied : proxies) {
+            Response remoteResponse = request(proxied, prepare(proxied, path, head), path, answered);
+            if (remoteResponse != null)
+                return remoteResponse;
+        }
+        return null;
+    }
+
+    /*
+     * Asks the proxies on the race threads, while this proxy thread waits for them. They must not be queued behind it
+     * on the proxy pool, a full pool of waiting races would never get to run them. The next one is asked right away
+     * (parallel), once the one before it takes longer than it usually does (hedged), or once all that were asked so far
+     * didn't have the file.
+     * The first response with the file wins. The losers that were not asked yet never will be, and the requests
+     * of those that were are aborted, whether they are still waiting on their upstream or already got an answer.
+     */
+    private Response race(IRepository repo, List<String> proxies, String path, boolean head, AtomicBoolean answered) {
+        Race race = new Race(path, head, answered);
+        Attempt winner = null;
+        int next = 0;
+        int pending = 0;
+
+        try {
+            race.start(proxies.get(next++));
+            pending++;
 
-                    return store(context, repo, path, remoteResponse);
+            while (pending > 0) {
+                long delay = next < proxies.size() ? hedgeDelay(repo, proxies.get(next - 1)) : -1;
+                Attempt attempt = delay < 0 ? race.done.take() : race.done.poll(delay, TimeUnit.MILLISECONDS);
+
+                if (attempt == null) { // Took too long, ask the next one as well
+                    race.start(proxies.get(next++));
+                    pending++;
+                    continue;
                 }
-                catch (Exception exception) {
-                    String message = "Proxied repository " + proxied + " is unavailable due to: " + exception.getMessage();
-                    Reposilite.getLogger().error(message);
 
-                    if (!(exception instanceof SocketTimeoutException)) {
-                        errorHandler.accept(path, new ReposiliteException(message, exception));
-                    }
+                pending--;
+
+                if (attempt.response != null) {
+                    Reposilite.getLogger().debug("RACED " + path + " won by " + attempt.proxied);
+                    winner = attempt;
+                    return attempt.response;
+                }
+
+                if (pending == 0 && next < proxies.size()) {
+                    race.start(proxies.get(next++));
+                    pending++;
                 }
             }
 
-            return Result.error(new ErrorDto(HttpStatus.SC_NOT_FOUND, "Artifact not found in local and remote repository"));
-        });
+            return null;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            race.close(winner);
+        }
+    }
+
+    private long hedgeDelay(IRepository repo, String proxied) {
+        if (repo.getProxyStrategy() == ProxyStrategy.PARALLEL)
+            return 0;
+        if (repo.getHedgeDelay() > 0)
+            return repo.getHedgeDelay();
+        long usual = upstreams.apply(proxied).getLatency().percentile(HEDGE_PERCENTILE);
+        return usual < 0 ? DEFAULT_HEDGE_DELAY : usual;
+    }
+
+    private Request prepare(String proxied, String path, boolean head) {
+        return head
+            ? transport.head(proxied + path, proxyConnectTimeout * 1000, proxyReadTimeout * 1000)
+            : transport.get(proxied + path, proxyConnectTimeout * 1000, proxyReadTimeout * 1000);
+    }
+
+    /*
+     * Asks a single upstream. Returns its response if it has the file, or null if it doesn't or can't be reached.
+     * Upstreams that answered at all, even if just to say they don't have it, set 'answered'.
+     */
+    private Response request(String proxied, Request remoteRequest, String path, AtomicBoolean answered) {
+        UpstreamHealth health = upstreams.apply(proxied);
+
+        UpstreamHealth.Permit permit = health.tryAcquire();
+
+        if (permit == null) {
+            Reposilite.getLogger().debug("SKIPPED " + proxied + path + ", circuit is " + health.getCircuit());
+            return null;
+        }
+
+        long start = System.nanoTime();
 
         try {
-            return future.get();
-        } catch (InterruptedException | ExecutionException e) {
-            errorHandler.accept(path, e);
-            return ResponseUtils.error(HttpStatus.SC_NOT_FOUND, "Error while resolving proxied artifact");
+            Response remoteResponse = remoteRequest.execute();
+            int status = remoteResponse.getStatus();
+
+            if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                health.failure(permit);
+                remoteResponse.close();
+                Reposilite.getLogger().warn("Proxied repository " + proxied + " responded with " + status + " to " + path);
+                return null;
+            }
+
+            health.success(permit, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            answered.set(true);
+
+            if (status < HttpStatus.SC_OK || status >= HttpStatus.SC_MULTIPLE_CHOICES) {
+                remoteResponse.close();
+                return null;
+            }
+
+            //TODO: Detect 302 redirects to directory listing
+            String contentType = remoteResponse.getHeader("Content-Type");
+            if (contentType != null && contentType.startsWith("text/html")) {
+                remoteResponse.close();
+                return null;
+            }
+
+            return remoteResponse;
+        }
+        catch (Exception exception) {
+            if (remoteRequest.isAborted()) { // Lost a race, nothing went wrong
+                health.release(permit);
+                Reposilite.getLogger().debug("CANCELLED " + proxied + path);
+                return null;
+            }
+
+            health.failure(permit);
+
+            String message = "Proxied repository " + proxied + " is unavailable due to: " + exception.getMessage();
+            Reposilite.getLogger().error(message);
+
+            if (!(exception instanceof SocketTimeoutException)) {
+                errorHandler.accept(path, new ReposiliteException(message, exception));
+            }
+            return null;
         }
     }
 
-    private Result<LookupResponse, ErrorDto> store(ReposiliteContext context, IRepository repo, String uri, HttpResponse remoteResponse) {
-        IQuota quota = repo.getQuota();
+    /*
+     * Copies the upstream body to the temporary file, which whoever waits for it follows as it grows, so they get
+     * the first bytes as soon as we do. The file is only published, with an atomic move, once the whole body arrived
+     * and matches what the upstream said about it. Clients that go away don't stop the download.
+     */
+    private void streamThrough(IRepository repo, View view, String path, Response remoteResponse, long contentLength, File part, StreamedDownload download, Flight flight) {
+        Checksums checksums = new Checksums();
+        long written = 0;
 
-        if (!quota.hasSpace()) {
-            Reposilite.getLogger().warn("Out of disk space - Cannot store proxied artifact " + uri);
-            return ResponseUtils.error(HttpStatus.SC_NOT_FOUND, "Artifact not found in local and remote repository");
+        try (InputStream source = remoteResponse.getContent(); OutputStream cache = Files.newOutputStream(part.toPath())) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+
+            while ((read = source.read(buffer)) != -1) {
+                cache.write(buffer, 0, read);
+                checksums.update(buffer, 0, read);
+                written += read;
+                download.progress(written);
+            }
+
+            String mismatch = verify(remoteResponse, contentLength, written, checksums);
+            if (mismatch != null)
+                throw new IOException("Proxied " + path + " from " + remoteResponse.getUrl() + " is corrupted: " + mismatch);
+        } catch (Exception exception) {
+            Reposilite.getLogger().warn("Cannot download " + path + " into " + repo + ": " + exception.getMessage());
+            download.seal();
+            download.fail(exception); // Aborts their responses, they have to know they didn't get the artifact
+            FileUtils.deleteQuietly(part);
+            land(flight, ResponseUtils.error(HttpStatus.SC_BAD_GATEWAY, "Cannot download artifact from remote repository"));
+            return;
+        } finally {
+            remoteResponse.close();
         }
 
+        download.seal();
         //TODO: Design a better API for this, so we don't have to cast to internal types.
-        CompletableFuture<Result<LookupResponse, ErrorDto>> future = ((RepositoryManager)repos).storeFile(
-            uri,
+        ((RepositoryManager)repos).moveFile(
+            path,
             repo,
-            context.view(),
-            context.filepath(),
-            remoteResponse::getContent,
+            view,
+            path,
+            part,
+            checksums,
             () -> {
-                File file = repo.getFile(context.view(), context.filepath());
-                Reposilite.getLogger().info("Stored proxied " + context.filepath() + " in " + repo + " from " + remoteResponse.getRequest().getUrl());
-                context.result(outputStream -> FileUtils.copyFile(file, outputStream));
-                return new LookupResponse(FileDetailsDto.of(file));
+                File file = repo.getFile(view, path);
+                Reposilite.getLogger().info("Stored proxied " + path + " in " + repo + " from " + remoteResponse.getUrl());
+
+                if (UpstreamValidators.isMutable(path)) {
+                    try {
+                        UpstreamValidators.of(remoteResponse).write(repo.getUpstreamFile(view, path));
+                    } catch (IOException exception) { // Stored all the same, it just won't be revalidated
+                        errorHandler.accept(path, new ReposiliteException("Cannot store upstream validators of " + path, exception));
+                    }
+                }
+
+                return new LookupResponse(FileDetailsDto.of(file), file);
             },
             exception -> new ErrorDto(HttpStatus.SC_UNPROCESSABLE_ENTITY, "Cannot process artifact")
-        );
+        ).whenComplete((result, throwable) -> {
+            if (result == null || result.isErr())
+                FileUtils.deleteQuietly(part);
+            // Verified either way, followers finish once it's stored so the next request finds it
+            download.complete();
+            land(flight, result == null ? ResponseUtils.error(HttpStatus.SC_UNPROCESSABLE_ENTITY, "Cannot process artifact") : result);
+        });
+    }
 
-        try {
-            return future.get();
-        } catch (InterruptedException | ExecutionException e) {
-            errorHandler.accept(uri, e);
-            return ResponseUtils.error(HttpStatus.SC_NOT_FOUND, "Error while resolving proxied artifact");
+    /*
+     * Returns why the download doesn't match the headers of the upstream, or null if it does.
+     * Maven Central, Nexus and Artifactory send the checksums of the artifact along with it.
+     */
+    private static String verify(Response remoteResponse, long contentLength, long written, Checksums checksums) {
+        if (contentLength > 0 && written != contentLength)
+            return "expected " + contentLength + " bytes, received " + written;
+
+        String expectedSha1 = remoteResponse.getHeader("X-Checksum-Sha1");
+        if (expectedSha1 != null && !expectedSha1.trim().equalsIgnoreCase(checksums.get(HashFunction.SHA1)))
+            return "sha1 does not match " + expectedSha1;
+
+        String expectedMd5 = remoteResponse.getHeader("X-Checksum-Md5");
+        if (expectedMd5 != null && !expectedMd5.trim().equalsIgnoreCase(checksums.get(HashFunction.MD5)))
+            return "md5 does not match " + expectedMd5;
+
+        return null;
+    }
+
+    private final class Race {
+        private final String path;
+        private final boolean head;
+        private final AtomicBoolean answered;
+        private final BlockingQueue<Attempt> done = new LinkedBlockingQueue<>();
+        private final List<Request> requests = new ArrayList<>();
+        private final List<Future<?>> running = new ArrayList<>();
+        private boolean closed = false;
+
+        private Race(String path, boolean head, AtomicBoolean answered) {
+            this.path = path;
+            this.head = head;
+            this.answered = answered;
+        }
+
+        private void start(String proxied) {
+            Request request = prepare(proxied, path, head);
+            synchronized (this) {
+                if (closed)
+                    return;
+                requests.add(request);
+            }
+
+            try {
+                running.add(raceService.submit(() -> finish(proxied, request, request(proxied, request, path, answered))));
+            } catch (RejectedExecutionException exception) {
+                finish(proxied, request, request(proxied, request, path, answered)); // No thread to spare, ask it ourselves
+            }
+        }
+
+        private synchronized void finish(String proxied, Request request, Response response) {
+            if (closed) {
+                if (response != null)
+                    response.close();
+                return;
+            }
+            done.add(new Attempt(proxied, request, response));
+        }
+
+        private void close(Attempt winner) {
+            synchronized (this) {
+                closed = true;
+                for (Attempt attempt : done) {
+                    if (attempt.response != null && attempt != winner)
+                        attempt.response.close();
+                }
+                // Frees the connections of those still waiting on their upstream, instead of letting them run into the timeout
+                for (Request request : requests) {
+                    if (winner == null || request != winner.request)
+                        request.abort();
+                }
+            }
+            running.forEach(future -> future.cancel(false));
+        }
+    }
+
+    private static final class Attempt {
+        private final String proxied;
+        private final Request request;
+        private final Response response; // Null if it didn't have the file
+
+        private Attempt(String proxied, Request request, Response response) {
+            this.proxied = proxied;
+            this.request = request;
+            this.response = response;
+        }
+    }
+
+    private static final class Flight {
+        private final String key;
+        // Completed with what the upstreams answered, for GET requests that's the download to follow
+        private final CompletableFuture<Result<LookupResponse, ErrorDto>> answered = new CompletableFuture<>();
+        // Completed once the artifact was stored, or we know it won't be
+        private final CompletableFuture<Result<LookupResponse, ErrorDto>> stored = new CompletableFuture<>();
+        private volatile boolean streaming;
+        private Runnable transfer; // The download, only touched by the proxy thread that runs it
+
+        private Flight(String key) {
+            this.key = key;
         }
     }
 
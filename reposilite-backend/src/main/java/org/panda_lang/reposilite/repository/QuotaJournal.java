@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import org.panda_lang.reposilite.utils.FilesUtils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/*
+ * Remembers the disk usage of a repository between runs, so it doesn't have to be walked on every start.
+ * Two files in the root of the repository: .usage, a snapshot that's replaced at once, and .usage.log,
+ * every change since, appended as it happens. Both carry a generation, a log that doesn't match the snapshot
+ * was folded into it already, right before a crash. A torn record at the end of the log ends it.
+ *
+ * Not thread safe, DiskQuota only uses it while it holds its own lock.
+ */
+final class QuotaJournal implements Closeable {
+    static final String SNAPSHOT = ".usage";
+    static final String LOG = ".usage.log";
+
+    private static final String USAGE = "usage";
+    private static final String GENERATION = "generation";
+    private static final String CLEAN = "clean";
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_SIZE = 12;
+    private static final int CHECK = 0x7E57AB1E;
+    private static final int COMPACT_AFTER = 4096;
+
+    private final File snapshotFile;
+    private final File logFile;
+    private final ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+    private FileChannel log;
+    private long generation = 0;
+    private int records = 0;
+
+    QuotaJournal(File root) {
+        this.snapshotFile = new File(root, SNAPSHOT);
+        this.logFile = new File(root, LOG);
+    }
+
+    static boolean isJournal(String name) {
+        return SNAPSHOT.equals(name) || LOG.equals(name);
+    }
+
+    /*
+     * The usage it remembers, or null if there's none that can be trusted, and it has to be walked.
+     * Also tells whether the last run shut down cleanly, if not, the last changes may have been lost along with the OS.
+     */
+    Remembered read() {
+        Properties properties = new Properties();
+
+        try (InputStream input = Files.newInputStream(snapshotFile.toPath())) {
+            properties.load(input);
+        } catch (IOException exception) {
+            return null;
+        }
+
+        long usage;
+        try {
+            usage = Long.parseLong(properties.getProperty(USAGE));
+            this.generation = Long.parseLong(properties.getProperty(GENERATION));
+        } catch (NumberFormatException exception) {
+            return null;
+        }
+
+        try (FileChannel channel = FileChannel.open(logFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            if (read(channel, header) && header.getLong(0) == generation) {
+                ByteBuffer buffer = ByteBuffer.allocate(RECORD_SIZE);
+                while (read(channel, buffer) && buffer.getInt(8) == check(buffer.getLong(0)))
+                    usage += buffer.getLong(0);
+            }
+        } catch (IOException exception) {
+            // No changes since the snapshot
+        }
+
+        return new Remembered(usage, Boolean.parseBoolean(properties.getProperty(CLEAN)));
+    }
+
+    private static boolean read(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) == -1)
+                return false;
+        }
+        return true;
+    }
+
+    /*
+     * Returns true once the log got long enough to be folded into a new snapshot.
+     * Not forced to the disk, the process dying doesn't lose it, the OS going down with it may.
+     */
+    boolean append(long delta) throws IOException {
+        record.clear();
+        record.putLong(delta).putInt(check(delta)).flip();
+        while (record.hasRemaining())
+            log.write(record);
+        return ++records >= COMPACT_AFTER;
+    }
+
+    /*
+     * Replaces the snapshot with the given usage, which has to include everything in the log, and starts a new log.
+     * Only a clean snapshot is trusted without walking the repository again, it's written when shutting down.
+     */
+    void snapshot(long usage, boolean clean) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(USAGE, Long.toString(usage));
+        properties.setProperty(GENERATION, Long.toString(generation + 1));
+        properties.setProperty(CLEAN, Boolean.toString(clean));
+
+        Path temp = Files.createTempFile(snapshotFile.getParentFile().toPath(), SNAPSHOT + '.', FilesUtils.PARTIAL_SUFFIX);
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                properties.store(Channels.newOutputStream(channel), null);
+                channel.force(true);
+            }
+            Files.move(temp, snapshotFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+
+        // From here on the old log is stale, even if it's not truncated yet
+        this.generation++;
+        this.records = 0;
+
+        if (log == null)
+            log = FileChannel.open(logFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        log.truncate(0);
+        log.position(0);
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(0, generation);
+        while (header.hasRemaining())
+            log.write(header);
+    }
+
+    boolean hasChanges() {
+        return records > 0;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (log != null)
+            log.close();
+        log = null;
+    }
+
+    // Nothing to trust anymore, the next start walks the repository
+    void discard() {
+        try {
+            close();
+        } catch (IOException ignored) {
+            // Deleted next anyway
+        }
+
+        snapshotFile.delete();
+        logFile.delete();
+    }
+
+    private static int check(long delta) {
+        return (int)(delta ^ (delta >>> 32)) ^ CHECK;
+    }
+
+    static final class Remembered {
+        private final long usage;
+        private final boolean clean;
+
+        private Remembered(long usage, boolean clean) {
+            this.usage = usage;
+            this.clean = clean;
+        }
+
+        long getUsage() {
+            return usage;
+        }
+
+        boolean isClean() {
+            return clean;
+        }
+    }
+}
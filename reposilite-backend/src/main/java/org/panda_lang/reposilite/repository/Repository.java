@@ -16,7 +16,6 @@
 
 package org.panda_lang.reposilite.repository;
 
-import org.apache.commons.io.FileUtils;
 import java.io.File;
 import java.util.Arrays;
 import java.util.Collection;
@@ -30,6 +29,8 @@ import org.panda_lang.reposilite.Reposilite;
 import org.panda_lang.reposilite.utils.FilesUtils;
 
 final class Repository implements IRepository {
+    static final String UPSTREAM_DIRECTORY = ".upstream";
+
     private final String name;
     private final File root;
     private final File rootReleases, rootSnapshots;
@@ -38,21 +39,34 @@ final class Repository implements IRepository {
     private final boolean browseable;
     private final DiskQuota quota;
     private final List<String> proxies;
+    private final ProxyStrategy proxyStrategy;
+    private final int hedgeDelay;
     private final List<String> prefixes;
+    private final PrefixTrie<String> prefixTrie = new PrefixTrie<>();
     private final String delegate;
+    private final ArtifactIndex indexReleases, indexSnapshots;
+    private final int negativeCacheTtl;
+    private final int revalidateTtl;
 
-    private Repository(String name, File root, List<String> prefixes, boolean hidden, boolean readOnly, boolean browseable, DiskQuota quota, List<String> proxies, String delegate) {
+    private Repository(String name, File root, List<String> prefixes, boolean hidden, boolean readOnly, boolean browseable, DiskQuota quota, List<String> proxies, ProxyStrategy proxyStrategy, int hedgeDelay, String delegate, boolean index, int negativeCacheTtl, int revalidateTtl) {
         this.name = name;
         this.root = root;
         this.rootReleases = new File(this.root, "releases");
         this.rootSnapshots = new File(this.root, "snapshots");
+        this.indexReleases = index ? new ArtifactIndex(this.rootReleases) : null;
+        this.indexSnapshots = index ? new ArtifactIndex(this.rootSnapshots) : null;
         this.prefixes = prefixes == null || prefixes.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(prefixes);
+        this.prefixes.forEach(prefix -> this.prefixTrie.add(prefix, prefix));
         this.hidden = hidden;
         this.readOnly = readOnly;
         this.browseable = browseable;
         this.quota = quota;
         this.proxies = proxies == null || proxies.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(proxies);
+        this.proxyStrategy = proxyStrategy == null ? ProxyStrategy.SEQUENTIAL : proxyStrategy;
+        this.hedgeDelay = Math.max(0, hedgeDelay);
         this.delegate = delegate == null || delegate.trim().isEmpty() ? null : delegate.trim();
+        this.negativeCacheTtl = Math.max(0, negativeCacheTtl);
+        this.revalidateTtl = Math.max(0, revalidateTtl);
     }
 
     @Override
@@ -62,9 +76,16 @@ final class Repository implements IRepository {
         }
         this.rootReleases.mkdirs();
         this.rootSnapshots.mkdirs();
-        // Calculate how much we've used.
-        // TODO: Move to a thread as this can take time and we don't want to stall the server while iterating
-        this.quota.allocate(FileUtils.sizeOfDirectory(this.root));
+        // How much we've used is added up in the background, see DiskUsageScan
+
+        if (this.indexReleases != null) {
+            Thread thread = new Thread(() -> {
+                this.indexReleases.scan();
+                this.indexSnapshots.scan();
+            }, "Reposilite " + getName() + " index");
+            thread.setDaemon(true);
+            thread.start();
+        }
     }
 
     @Override
@@ -95,7 +116,16 @@ final class Repository implements IRepository {
     public File getFile(View view, String... paths) {
         if (paths.length == 0) return getRoot(view, null);
         String path = paths.length == 1 ? paths[0] : Arrays.stream(paths).collect(Collectors.joining(File.separator));
-        return new File(getRoot(view, path), path);
+        File root = getRoot(view, path);
+        if (this.indexReleases != null)
+            return (root == this.rootReleases ? this.indexReleases : this.indexSnapshots).getFile(path);
+        return new File(root, path);
+    }
+
+    @Override
+    public File getUpstreamFile(View view, String path) {
+        // Outside of releases and snapshots, so they're not listed, indexed or served
+        return new File(new File(new File(this.root, UPSTREAM_DIRECTORY), getRoot(view, path).getName()), path);
     }
 
     /*
@@ -110,6 +140,11 @@ final class Repository implements IRepository {
         return name;
     }
 
+    @Override
+    public File getDirectory() {
+        return root;
+    }
+
     @Override
     public boolean isReadOnly() {
         return this.readOnly;
@@ -135,6 +170,31 @@ final class Repository implements IRepository {
         return this.proxies;
     }
 
+    @Override
+    public ProxyStrategy getProxyStrategy() {
+        return this.proxyStrategy;
+    }
+
+    @Override
+    public int getHedgeDelay() {
+        return this.hedgeDelay;
+    }
+
+    @Override
+    public Collection<String> getPrefixes() {
+        return this.prefixes;
+    }
+
+    @Override
+    public int getNegativeCacheTtl() {
+        return this.negativeCacheTtl;
+    }
+
+    @Override
+    public int getRevalidateTtl() {
+        return this.revalidateTtl;
+    }
+
     @Override
     public String getDelegate() {
         return this.delegate;
@@ -148,12 +208,7 @@ final class Repository implements IRepository {
         if (path == null || path.isEmpty())
             return false;
 
-        for (String prefix : this.prefixes) {
-            if (path.startsWith(prefix))
-                return true;
-        }
-
-        return false;
+        return this.prefixTrie.matches(path);
     }
 
     @Override
@@ -161,13 +216,8 @@ final class Repository implements IRepository {
         if (path == null || path.isEmpty())
             return true;
 
-        if (!this.prefixes.isEmpty()) {
-            String test = path + '/';
-            for (String prefix : this.prefixes) {
-                if (prefix.startsWith(test))
-                    return true;
-            }
-        }
+        if (!this.prefixes.isEmpty() && this.prefixTrie.isDirectory(path))
+            return true;
 
         File file = getFile(View.RELEASES, path);
         if (file.exists() && file.isDirectory())
@@ -190,7 +240,12 @@ final class Repository implements IRepository {
         private boolean browseable = true;
         protected String quota = null;
         private List<String> proxies = new ArrayList<>();
+        private ProxyStrategy proxyStrategy = ProxyStrategy.SEQUENTIAL;
+        private int hedgeDelay = 0;
         private String delegate = null;
+        private boolean index = false;
+        private int negativeCacheTtl = 0;
+        private int revalidateTtl = 0;
         protected Supplier<File> directory;
 
         Builder(String name) {
@@ -218,7 +273,12 @@ final class Repository implements IRepository {
                 this.browseable,
                 getQuota(),
                 this.proxies,
-                this.delegate
+                this.proxyStrategy,
+                this.hedgeDelay,
+                this.delegate,
+                this.index,
+                this.negativeCacheTtl,
+                this.revalidateTtl
             );
         }
 
@@ -260,6 +320,18 @@ final class Repository implements IRepository {
             return this;
         }
 
+        @Override
+        public Builder proxyStrategy(ProxyStrategy value) {
+            this.proxyStrategy = value;
+            return this;
+        }
+
+        @Override
+        public Builder hedgeDelay(int value) {
+            this.hedgeDelay = value;
+            return this;
+        }
+
         @Override
         public Builder dir(File value) {
             this.directory = () -> value;
@@ -277,5 +349,23 @@ final class Repository implements IRepository {
             this.delegate = value;
             return this;
         }
+
+        @Override
+        public Builder index(boolean value) {
+            this.index = value;
+            return this;
+        }
+
+        @Override
+        public Builder negativeCacheTtl(int value) {
+            this.negativeCacheTtl = value;
+            return this;
+        }
+
+        @Override
+        public Builder revalidateTtl(int value) {
+            this.revalidateTtl = value;
+            return this;
+        }
     }
 }
@@ -6,15 +6,18 @@ import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.SynchronousQueue;
-import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.function.Consumer;
@@ -22,37 +25,60 @@ import java.util.function.Function;
 import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
+import org.panda_lang.reposilite.BoundedExecutor;
 import org.panda_lang.reposilite.ReposiliteConfiguration;
 import org.panda_lang.reposilite.repository.IRepository.View;
+import org.panda_lang.reposilite.utils.Checksums;
+import org.panda_lang.reposilite.utils.FilesUtils;
+import org.panda_lang.reposilite.utils.HashFunction;
 import org.panda_lang.utilities.commons.function.Result;
 import org.panda_lang.utilities.commons.function.ThrowingRunnable;
 import org.panda_lang.utilities.commons.function.ThrowingSupplier;
 
 import io.javalin.http.Handler;
 
+import javax.annotation.Nullable;
+
 class RepositoryManager implements IRepositoryManager {
     private final DiskQuota quota;
     private final File root;
     private final ExecutorService executor;
+    private final ExecutorService proxyExecutor;
+    private final ExecutorService raceExecutor;
     private final ScheduledExecutorService scheduled;
+    private final @Nullable UpstreamTransport transport; // Only if there is something to proxy
     private final BiConsumer<String, Exception> errorHandler;
     private final Map<String, IRepository> repos;
     private final Collection<IRepository> repoView;
+    private final PrefixTrie<IRepository> prefixes = new PrefixTrie<>();
     private final RepositoryStorage storage;
     private final DeployService deployService;
     private final MetadataService metadataService;
+    private final DeployedChecksums deployedChecksums = new DeployedChecksums();
+    private final NegativeCache negativeCache;
+    private final Map<String, UpstreamHealth> upstreams = new ConcurrentHashMap<>();
+    private final int circuitFailures;
+    private final long circuitCooldown;
 
-    private RepositoryManager(DiskQuota quota, File root, ExecutorService executor, ScheduledExecutorService scheduled, BiConsumer<String, Exception> errorHandler, Map<String, IRepository> repos) {
+    private RepositoryManager(DiskQuota quota, File root, ExecutorService executor, ExecutorService proxyExecutor, ExecutorService raceExecutor, ScheduledExecutorService scheduled, @Nullable UpstreamTransport transport, BiConsumer<String, Exception> errorHandler, Map<String, IRepository> repos, int circuitFailures, int circuitCooldown, long metadataCache, boolean verifyDiskUsage) {
         this.quota = quota;
         this.root = root;
         this.executor = executor;
+        this.proxyExecutor = proxyExecutor;
+        this.raceExecutor = raceExecutor;
         this.scheduled = scheduled;
+        this.transport = transport;
         this.errorHandler = errorHandler;
+        this.circuitFailures = circuitFailures;
+        this.circuitCooldown = TimeUnit.SECONDS.toMillis(circuitCooldown);
         this.repos = repos;
         this.repoView = Collections.unmodifiableCollection(this.repos.values());
-        this.storage = new RepositoryStorage(this, this.executor, this.scheduled);
-        this.metadataService = new MetadataService(this.errorHandler);
-        this.deployService = new DeployService(this, this.metadataService);
+        for (IRepository repo : this.repoView)
+            repo.getPrefixes().forEach(prefix -> this.prefixes.add(prefix, repo));
+        this.negativeCache = new NegativeCache(this.repoView);
+        this.storage = new RepositoryStorage(this, this.executor, this.scheduled, this.deployedChecksums, verifyDiskUsage);
+        this.metadataService = new MetadataService(this.errorHandler, metadataCache);
+        this.deployService = new DeployService(this, this.metadataService, this.deployedChecksums);
     }
 
     @Override
@@ -60,6 +86,11 @@ class RepositoryManager implements IRepositoryManager {
         this.storage.load();
     }
 
+    @Override
+    public void save() {
+        this.storage.save(true);
+    }
+
     @Override
     public IRepository getRepo(String name) {
         return this.repos.get(name);
@@ -76,23 +107,49 @@ class RepositoryManager implements IRepositoryManager {
     }
 
     @Override
-    public ReposiliteConfiguration getCommands() {
+    public List<UpstreamDto> getUpstreams() {
+        return this.upstreams.values().stream()
+            .map(UpstreamHealth::toDto)
+            .sorted(Comparator.comparing(UpstreamDto::getUrl))
+            .collect(Collectors.toList());
+    }
+
+    @Override
+    public DiskUsageScan getDiskUsageScan() {
+        return this.storage.getDiskUsageScan();
+    }
+
+    @Override
+    public MetadataService getMetadataService() {
         return this.metadataService;
     }
 
+    UpstreamHealth getUpstream(String url) {
+        return this.upstreams.computeIfAbsent(url, key -> new UpstreamHealth(key, this.circuitFailures, this.circuitCooldown));
+    }
+
+    @Override
+    public ReposiliteConfiguration getCommands() {
+        return reposilite -> {
+            this.metadataService.configure(reposilite);
+            reposilite.getConsole().registerCommand(new DeployedChecksums.ChecksumsCommand(this.deployedChecksums));
+        };
+    }
+
     @Override
     public void register(IJavalinContext jctx) {
         if (jctx.apiEnabled()) {
             Handler lookupApiEndpoint = jctx.authedToHandler(new LookupApiEndpoint(this));
             jctx.javalin()
+                .get("/api/upstreams", jctx.authedToHandler(new UpstreamsEndpoint(this, jctx.auth())))
                 .get("/api", lookupApiEndpoint) // TODO: Kill this... We need to re-org the API to sane expandable formats.
                 .get("/api/*", lookupApiEndpoint);
         }
 
         Handler deployEndpoint = jctx.authedToHandler(new DeployEndpoint(this.deployService));
 
-        ProxyService proxyService = new ProxyService(this, jctx.config().proxyConnectTimeout, jctx.config().proxyReadTimeout, this.executor, this.errorHandler);
-        LookupService lookupService = new LookupService(metadataService, this, proxyService);
+        ProxyService proxyService = new ProxyService(this, jctx.config().proxyConnectTimeout, jctx.config().proxyReadTimeout, jctx.config().proxyHeadCacheTtl, this.proxyExecutor, this.raceExecutor, this.transport, this::getUpstream, this.errorHandler);
+        LookupService lookupService = new LookupService(metadataService, this, proxyService, this.negativeCache);
         Handler lookupController = jctx.authedToHandler(new LookupEndpoint(jctx.frontend(), lookupService, errorHandler));
 
         jctx.javalin()
@@ -102,6 +159,28 @@ class RepositoryManager implements IRepositoryManager {
             .post("/*", deployEndpoint);
     }
 
+    /*
+     * Filters the repositories down to those that can contain the path, keeping their order.
+     * Uses the combined prefix trie of all repositories, so it's the same as calling
+     * IRepository.canContain on each of them, without scanning every prefix.
+     * Returns null if none of them can.
+     */
+    List<IRepository> filterContaining(List<IRepository> candidates, String path) {
+        Set<IRepository> matched = Collections.newSetFromMap(new IdentityHashMap<>());
+        if (path != null && !path.isEmpty())
+            this.prefixes.collect(path, matched::add);
+
+        List<IRepository> ret = null;
+        for (IRepository repo : candidates) {
+            if (!repo.getPrefixes().isEmpty() && !matched.contains(repo))
+                continue;
+
+            if (ret == null)
+                ret = new ArrayList<>();
+            ret.add(repo);
+        }
+        return ret;
+    }
 
     <R, E, T extends Exception> CompletableFuture<Result<R, E>> storeFile(
             String id,
@@ -112,10 +191,51 @@ class RepositoryManager implements IRepositoryManager {
             ThrowingSupplier<R, T> onSuccess,
             Function<Exception, E> onError) {
 
+        return storeFile(id, repo, path, () -> this.storage.storeFile(source.get(), repo, path, view), onSuccess, onError);
+    }
+
+    // Same as above, for a file that was fully written to a temporary location already
+    <R, E, T extends Exception> CompletableFuture<Result<R, E>> moveFile(
+            String id,
+            IRepository repo,
+            View view,
+            String path,
+            File source,
+            @Nullable Checksums checksums,
+            ThrowingSupplier<R, T> onSuccess,
+            Function<Exception, E> onError) {
+
+        return storeFile(id, repo, path, () -> this.storage.moveFile(source, checksums, repo, path, view), onSuccess, onError);
+    }
+
+    private <R, E, T extends Exception> CompletableFuture<Result<R, E>> storeFile(
+            String id,
+            IRepository repo,
+            String path,
+            ThrowingSupplier<CompletableFuture<File>, Exception> store,
+            ThrowingSupplier<R, T> onSuccess,
+            Function<Exception, E> onError) {
+
         CompletableFuture<Result<R, E>> task = new CompletableFuture<>();
 
         tryExecute(id, task, onError, () -> {
-            this.storage.storeFile(source.get(), repo, path, view).thenAccept(file -> {
+            store.get().whenComplete((file, throwable) -> {
+                if (throwable != null) {
+                    // Retried writes fail here, for instance when the storage pool is full
+                    Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+                    Exception exception = cause instanceof Exception ? (Exception) cause : new CompletionException(cause);
+                    errorHandler.accept(id, exception);
+                    task.complete(Result.error(onError.apply(exception)));
+                    return;
+                }
+
+                this.negativeCache.invalidate(repo, path);
+                if (Checksums.hasSidecars(path)) {
+                    for (HashFunction function : HashFunction.values())
+                        this.negativeCache.invalidate(repo, path + '.' + function.getExtension());
+                }
+                if (file.getName().equals("maven-metadata.xml")) // Proxied ones change when they're revalidated
+                    this.metadataService.clearMetadata(file);
                 tryExecute(id, task, onError, () -> {
                     task.complete(Result.ok(onSuccess.get()));
                 });
@@ -137,11 +257,18 @@ class RepositoryManager implements IRepositoryManager {
     static class Builder implements IRepositoryManager.Builder {
         private String quota = null;
         private File dir = new File("./repositories");
-        private Supplier<ExecutorService> executor = () -> new ThreadPoolExecutor(0, Integer.MAX_VALUE, 1, TimeUnit.SECONDS, new SynchronousQueue<>());
+        private Supplier<ExecutorService> executor = () -> new BoundedExecutor("storage", 4, 256);
+        private Supplier<ExecutorService> proxyExecutor = () -> new BoundedExecutor("proxy", 16, 256);
+        private Supplier<ExecutorService> raceExecutor = () -> new BoundedExecutor("race", 32, 0);
         private Supplier<ScheduledExecutorService> scheduled = Executors::newSingleThreadScheduledExecutor;
+        private Supplier<UpstreamTransport> transport = () -> new ApacheUpstreamTransport(64, 16, 30);
         private BiConsumer<String, Exception> error = (a, b) -> {};
         private List<Supplier<IRepository>> repos = new ArrayList<>();
         private DiskQuota quotaObj = null;
+        private int circuitFailures = 5;
+        private int circuitCooldown = 30;
+        private String metadataCache = "32MB";
+        private boolean verifyDiskUsage = false;
 
         @Override
         public IRepositoryManager build() {
@@ -160,13 +287,23 @@ class RepositoryManager implements IRepositoryManager {
                 LinkedHashMap::new)
             );
 
+            // The default one is a pool of connections with a thread of its own, nobody would close it if it's never used
+            boolean proxied = repoMap.values().stream().anyMatch(repo -> !repo.getProxies().isEmpty());
+
             return new RepositoryManager(
                 this.quotaObj,
                 dir,
                 executor.get(),
+                proxyExecutor.get(),
+                raceExecutor.get(),
                 scheduled.get(),
+                proxied ? transport.get() : null,
                 error,
-                repoMap
+                repoMap,
+                circuitFailures,
+                circuitCooldown,
+                FilesUtils.displayToBytes(metadataCache),
+                verifyDiskUsage
             );
         }
 
@@ -182,18 +319,55 @@ class RepositoryManager implements IRepositoryManager {
             return this;
         }
 
+        @Override
+        public Builder metadataCache(String value) {
+            this.metadataCache = value;
+            return this;
+        }
+
+        @Override
+        public Builder verifyDiskUsage(boolean value) {
+            this.verifyDiskUsage = value;
+            return this;
+        }
+
         @Override
         public Builder executor(ExecutorService value) {
             this.executor = () -> value;
             return this;
         }
 
+        @Override
+        public Builder circuitBreaker(int failures, int cooldown) {
+            this.circuitFailures = failures;
+            this.circuitCooldown = cooldown;
+            return this;
+        }
+
+        @Override
+        public Builder proxyExecutor(ExecutorService value) {
+            this.proxyExecutor = () -> value;
+            return this;
+        }
+
+        @Override
+        public Builder raceExecutor(ExecutorService value) {
+            this.raceExecutor = () -> value;
+            return this;
+        }
+
         @Override
         public Builder scheduled(ScheduledExecutorService value) {
             this.scheduled = () -> value;
             return this;
         }
 
+        @Override
+        public Builder transport(UpstreamTransport value) {
+            this.transport = () -> value;
+            return this;
+        }
+
         @Override
         public Builder error(BiConsumer<String, Exception> value) {
             this.error = value;
@@ -18,29 +18,53 @@ package org.panda_lang.reposilite.repository;
 
 import org.apache.commons.io.FileUtils;
 import org.panda_lang.reposilite.Reposilite;
+import org.panda_lang.reposilite.repository.ArtifactIndex.IndexedFile;
 import org.panda_lang.reposilite.repository.IRepository.View;
+import org.panda_lang.reposilite.utils.Checksums;
+import org.panda_lang.reposilite.utils.FilesUtils;
+import org.panda_lang.reposilite.utils.HashFunction;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.nio.file.StandardCopyOption;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import javax.annotation.Nullable;
+
+/*
+ * Writes go to a temporary file next to the target first, which then replaces it in one atomic move,
+ * so readers only ever see a complete file. Writes of the same path are queued up here, in memory,
+ * and each starts as soon as the one before it finished.
+ */
 final class RepositoryStorage {
-    private static final long RETRY_WRITE_TIME = 2000L;
+    private static final long SNAPSHOT_INTERVAL = 5;
 
     private final IRepositoryManager manager;
     private final ExecutorService executor;
     private final ScheduledExecutorService scheduled;
+    private final DeployedChecksums deployedChecksums;
+    private final boolean verifyDiskUsage;
+    // Walking the disk is bound by its latency, so it gets more threads than there are cores
+    private final DiskUsageScan diskUsageScan = new DiskUsageScan(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+    private final Map<File, CompletableFuture<File>> writes = new ConcurrentHashMap<>();
 
-    RepositoryStorage(IRepositoryManager manager, ExecutorService executor, ScheduledExecutorService scheduled) {
+    RepositoryStorage(IRepositoryManager manager, ExecutorService executor, ScheduledExecutorService scheduled, DeployedChecksums deployedChecksums, boolean verifyDiskUsage) {
         this.manager = manager;
         this.executor = executor;
         this.scheduled = scheduled;
+        this.deployedChecksums = deployedChecksums;
+        this.verifyDiskUsage = verifyDiskUsage;
     }
 
     void load() {
@@ -48,48 +72,127 @@ final class RepositoryStorage {
 
         for (IRepository repo : manager.getRepos()) {
             repo.load();
-            Reposilite.getLogger().info("+ " + repo.getName() + (repo.isHidden() ? " (hidden)" : "") + " " + repo.getQuota());
+            Reposilite.getLogger().info("+ " + repo.getName() + (repo.isHidden() ? " (hidden)" : ""));
         }
 
-        Reposilite.getLogger().info(manager.getRepos().size() + " repositories have been found " + manager.getQuota());
+        Reposilite.getLogger().info(manager.getRepos().size() + " repositories have been found, scanning their disk usage in the background");
+        diskUsageScan.start((DiskQuota)manager.getQuota(), manager.getRepos(), verifyDiskUsage);
+        // Keeps the journals short, so a crash loses little, and they're quick to read
+        scheduled.scheduleWithFixedDelay(() -> save(false), SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL, TimeUnit.MINUTES);
+    }
+
+    // Remembers the disk usage of every repository for the next start, clean when shutting down
+    void save(boolean clean) {
+        for (IRepository repo : manager.getRepos())
+            ((DiskQuota)repo.getQuota()).save(clean);
+    }
+
+    DiskUsageScan getDiskUsageScan() {
+        return diskUsageScan;
     }
 
+    // Hashed while it's written, its checksum files are written from that
     CompletableFuture<File> storeFile(InputStream source, IRepository repo, String path, View view) throws Exception {
-        return storeFile(new CompletableFuture<>(), source, repo, path, view);
+        return storeFile(temp -> {
+            Checksums checksums = new Checksums();
+            try (OutputStream output = Files.newOutputStream(temp)) {
+                checksums.copy(source, output);
+            }
+            return checksums;
+        }, repo, path, view);
     }
 
-    private CompletableFuture<File> storeFile(CompletableFuture<File> task, InputStream source, IRepository repo, String path, View view) throws IOException {
+    /*
+     * Publishes a file that was already written completely elsewhere, such as a proxied download.
+     * It has to be on the same filesystem as the repository, so the move is atomic.
+     * The checksums are of the source, from when it was written, or null to not write checksum files.
+     */
+    CompletableFuture<File> moveFile(File source, @Nullable Checksums checksums, IRepository repo, String path, View view) throws Exception {
+        return storeFile(temp -> {
+            Files.move(source.toPath(), temp, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            return checksums;
+        }, repo, path, view);
+    }
+
+    private CompletableFuture<File> storeFile(Content content, IRepository repo, String path, View view) throws IOException {
         File targetFile = repo.getFile(view, path);
 
-        if (targetFile.isDirectory()) {
-            throw new IOException("Cannot lock directory");
+        // Always ask the disk here, the index may not have caught up with it yet
+        if (Files.isDirectory(targetFile.toPath())) {
+            throw new IOException("Cannot write to directory");
         }
 
-        File lockedFile = new File(targetFile.getAbsolutePath() + ".lock");
-
-        if (lockedFile.exists()) {
-            scheduled.schedule(() -> {
-                executor.submit(() -> {
-                    storeFile(task, source, repo, path, view);
-                    return null;
-                });
-            }, RETRY_WRITE_TIME, TimeUnit.MILLISECONDS);
+        CompletableFuture<File> task = new CompletableFuture<>();
+        CompletableFuture<File> previous = writes.put(targetFile, task);
 
+        if (previous == null) {
+            write(task, content, repo, view, path, targetFile);
             return task;
         }
 
-        FileUtils.forceMkdirParent(targetFile);
+        // Failed or not, the next write goes right after it
+        previous.whenComplete((file, throwable) -> {
+            try {
+                executor.submit(() -> write(task, content, repo, view, path, targetFile));
+            } catch (RejectedExecutionException exception) {
+                writes.remove(targetFile, task);
+                task.completeExceptionally(exception);
+            }
+        });
+
+        return task;
+    }
 
-        if (targetFile.exists()) {
-            Files.move(targetFile.toPath(), lockedFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    private void write(CompletableFuture<File> task, Content content, IRepository repo, View view, String path, File targetFile) {
+        File tempFile = null;
+
+        try {
+            FileUtils.forceMkdirParent(targetFile);
+            tempFile = Files.createTempFile(targetFile.getParentFile().toPath(), targetFile.getName() + '.', FilesUtils.PARTIAL_SUFFIX).toFile();
+
+            Checksums checksums = content.writeTo(tempFile.toPath());
+            // Nothing else writes this path until we're done, so it's still the file that's replaced next
+            long change = tempFile.length() - sizeOf(targetFile.toPath());
+            Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            // Only once it's there, a failed move leaves the usage as it was
+            ((DiskQuota)repo.getQuota()).allocate(change);
+
+            if (targetFile instanceof IndexedFile)
+                ((IndexedFile)targetFile).refresh();
+
+            if (checksums != null && Checksums.hasSidecars(path)) {
+                ((DiskQuota)repo.getQuota()).allocate(checksums.writeSidecars(targetFile.toPath()));
+
+                for (HashFunction function : HashFunction.values()) {
+                    File sidecar = repo.getFile(view, path + '.' + function.getExtension());
+                    if (sidecar instanceof IndexedFile)
+                        ((IndexedFile)sidecar).refresh();
+                }
+
+                deployedChecksums.stored(targetFile, checksums);
+            }
+
+            writes.remove(targetFile, task);
+            task.complete(targetFile);
+        } catch (Exception exception) {
+            if (tempFile != null)
+                FileUtils.deleteQuietly(tempFile);
+
+            writes.remove(targetFile, task);
+            task.completeExceptionally(exception);
         }
+    }
 
-        Files.copy(source, lockedFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
-        //TODO: This needs to subtract the length of the overwritten file. So that repeated deploys don't eat the quota
-        ((DiskQuota)repo.getQuota()).allocate(lockedFile.length());
-        Files.move(lockedFile.toPath(), targetFile.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    private static long sizeOf(Path file) throws IOException {
+        try {
+            return Files.size(file);
+        } catch (NoSuchFileException exception) {
+            return 0;
+        }
+    }
 
-        task.complete(targetFile);
-        return task;
+    @FunctionalInterface
+    private interface Content {
+        @Nullable Checksums writeTo(Path temp) throws IOException;
     }
 }
@@ -0,0 +1,195 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import org.eclipse.jetty.server.HttpOutput;
+import org.panda_lang.reposilite.error.ErrorDto;
+import org.panda_lang.utilities.commons.function.Result;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * A proxied file while it's downloaded to the temporary file next to where it's stored. Clients follow that file
+ * as it grows, with async I/O, so the download goes as fast as the upstream sends it and a slow client only
+ * holds its own connection, not one of the proxy threads.
+ *
+ * The proxy thread reports progress, every follower that caught up with it is woken to send what's new.
+ */
+final class StreamedDownload {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File part;
+    private final CompletableFuture<Result<LookupResponse, ErrorDto>> stored;
+    private final List<Follower> followers = new CopyOnWriteArrayList<>();
+    private volatile long written = 0;
+    private volatile boolean done = false;
+    private volatile Throwable failure = null;
+    private boolean sealed = false; // Guarded by this, the temporary file is about to be moved or deleted
+
+    StreamedDownload(File part, CompletableFuture<Result<LookupResponse, ErrorDto>> stored) {
+        this.part = part;
+        this.stored = stored;
+    }
+
+    void progress(long written) {
+        this.written = written;
+        followers.forEach(Follower::wake);
+    }
+
+    // Nobody can start following it from here on, those who already do keep reading the file they opened
+    synchronized void seal() {
+        this.sealed = true;
+    }
+
+    // Everything was written and matches what the upstream said about it
+    void complete() {
+        this.done = true;
+        followers.forEach(Follower::wake);
+    }
+
+    // Followers abort their responses, so their clients know they didn't get the file
+    void fail(Throwable throwable) {
+        this.failure = throwable;
+        followers.forEach(Follower::wake);
+    }
+
+    /*
+     * Sends what was downloaded so far to the response, and the rest as it arrives. The response has to be in async mode.
+     * Returns a future completed once everything was sent, or exceptionally if it wasn't, or null if it's too late to follow.
+     */
+    CompletableFuture<Void> follow(ServletOutputStream output) throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            if (sealed)
+                return null;
+            channel = FileChannel.open(part.toPath(), StandardOpenOption.READ);
+        }
+
+        Follower follower = new Follower(output, channel);
+        followers.add(follower);
+        output.setWriteListener(follower); // Calls onWritePossible once the output is ready
+        return follower.sent;
+    }
+
+    // Completed once the file was stored, or we know it won't be, for those too late to follow it
+    CompletableFuture<Result<LookupResponse, ErrorDto>> stored() {
+        return stored;
+    }
+
+    private final class Follower implements WriteListener {
+        private final ServletOutputStream output;
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        private final CompletableFuture<Void> sent = new CompletableFuture<>();
+        // Whoever takes it from 0 sends, everyone else just makes it look again once it's done
+        private final AtomicInteger pumping = new AtomicInteger();
+        // Set once Jetty calls the listener, before that the output may still be blocking and isn't ours to write to
+        private volatile boolean listening = false;
+        private long position = 0;
+
+        private Follower(ServletOutputStream output, FileChannel channel) {
+            this.output = output;
+            this.channel = channel;
+        }
+
+        @Override
+        public void onWritePossible() {
+            listening = true;
+            pump();
+        }
+
+        // The download moved on, the first onWritePossible sends whatever happened before it
+        private void wake() {
+            if (listening)
+                pump();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            finish(throwable); // The client went away, the download goes on without it
+        }
+
+        private void pump() {
+            if (pumping.getAndIncrement() != 0)
+                return;
+
+            do {
+                try {
+                    send();
+                } catch (IOException | RuntimeException exception) {
+                    finish(exception);
+                }
+            } while (pumping.decrementAndGet() != 0);
+        }
+
+        // Writes as long as the output takes it without blocking, Jetty calls onWritePossible once it does again
+        private void send() throws IOException {
+            while (!sent.isDone() && output.isReady()) {
+                // Read before 'written', so the last bytes are never missed
+                boolean finished = done;
+                Throwable failed = failure;
+                long available = written;
+
+                if (failed != null) {
+                    if (output instanceof HttpOutput)
+                        ((HttpOutput) output).getHttpChannel().abort(failed);
+                    finish(failed);
+                    return;
+                }
+
+                if (position >= available) {
+                    if (finished)
+                        finish(null);
+                    return; // Caught up, progress wakes us
+                }
+
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), available - position));
+                int read = channel.read(buffer, position);
+                if (read <= 0)
+                    throw new EOFException("File " + part + " is shorter than it was reported to be");
+
+                output.write(buffer.array(), 0, read);
+                position += read;
+            }
+        }
+
+        private void finish(Throwable throwable) {
+            followers.remove(this);
+
+            try {
+                channel.close();
+            } catch (IOException ignored) { /* nothing left to read from it anyway */ }
+
+            if (throwable == null)
+                sent.complete(null);
+            else
+                sent.completeExceptionally(throwable);
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import java.io.Serializable;
+
+@SuppressWarnings("serial")
+public final class UpstreamDto implements Serializable {
+
+    private final String url;
+    private final String circuit;
+    private final long requests;
+    private final long failures;
+    private final long skipped;
+    private final double errorRate;
+    private final long p50;
+    private final long p95;
+    private final long p99;
+
+    UpstreamDto(String url, String circuit, long requests, long failures, long skipped, double errorRate, long p50, long p95, long p99) {
+        this.url = url;
+        this.circuit = circuit;
+        this.requests = requests;
+        this.failures = failures;
+        this.skipped = skipped;
+        this.errorRate = errorRate;
+        this.p50 = p50;
+        this.p95 = p95;
+        this.p99 = p99;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    // closed, open or half_open
+    public String getCircuit() {
+        return circuit;
+    }
+
+    public long getRequests() {
+        return requests;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    // Requests that didn't go to this upstream, because its circuit was open
+    public long getSkipped() {
+        return skipped;
+    }
+
+    // Of the last few requests
+    public double getErrorRate() {
+        return errorRate;
+    }
+
+    // Response time percentiles in milliseconds, -1 until there are enough responses to tell
+
+    public long getP50() {
+        return p50;
+    }
+
+    public long getP95() {
+        return p95;
+    }
+
+    public long getP99() {
+        return p99;
+    }
+
+}
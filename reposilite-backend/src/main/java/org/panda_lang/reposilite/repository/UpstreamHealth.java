@@ -0,0 +1,198 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import java.util.function.LongSupplier;
+
+/*
+ * Health of a single proxied repository, with a circuit breaker so a mirror that keeps failing
+ * stops costing every miss a timeout. After enough failures in a row, or too many of the recent
+ * requests failing, the circuit opens and the mirror is skipped. Once the cooldown passed a single
+ * request is let through: the circuit closes if it works, and opens for another cooldown if not.
+ * Only that probe can close it, a slow request sent before the circuit opened says nothing about now.
+ *
+ * Failures are anything that isn't an answer: timeouts, connection errors and 5xx responses.
+ * A 404 is a healthy mirror that just doesn't have the file.
+ */
+final class UpstreamHealth {
+    private static final int LATENCY_SAMPLES = 100;
+    private static final int OUTCOME_SAMPLES = 20;
+    private static final int MIN_OUTCOMES = 10;
+    private static final double MAX_ERROR_RATE = 0.5;
+
+    enum Circuit {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    private final String url;
+    private final int failureThreshold;
+    private final long cooldown;
+    private final LongSupplier clock;
+    private final LatencyWindow latency = new LatencyWindow(LATENCY_SAMPLES);
+
+    // Last few outcomes, true for failures
+    private final boolean[] outcomes = new boolean[OUTCOME_SAMPLES];
+    private int nextOutcome = 0;
+    private int outcomeCount = 0;
+    private int recentFailures = 0;
+
+    private Circuit circuit = Circuit.CLOSED;
+    private int consecutiveFailures = 0;
+    private long openedAt = 0;
+    private long openings = 0; // Tells the permits of requests sent before the circuit last opened apart
+    private boolean probing = false;
+
+    private long requests = 0;
+    private long failures = 0;
+    private long skipped = 0;
+
+    UpstreamHealth(String url, int failureThreshold, long cooldownMillis) {
+        this(url, failureThreshold, cooldownMillis, System::currentTimeMillis);
+    }
+
+    UpstreamHealth(String url, int failureThreshold, long cooldownMillis, LongSupplier clock) {
+        this.url = url;
+        this.failureThreshold = failureThreshold;
+        this.cooldown = cooldownMillis;
+        this.clock = clock;
+    }
+
+    /*
+     * Whether a request may be sent now, null if not. Every request that was let through has to be
+     * followed by one of success, failure or release, with the permit it got here.
+     */
+    synchronized Permit tryAcquire() {
+        if (failureThreshold <= 0)
+            return new Permit(false, openings);
+
+        switch (circuit) {
+            case OPEN:
+                if (clock.getAsLong() - openedAt < cooldown) {
+                    skipped++;
+                    return null;
+                }
+                circuit = Circuit.HALF_OPEN;
+                probing = true;
+                return new Permit(true, openings);
+            case HALF_OPEN:
+                if (probing) { // Only one request finds out if it's back
+                    skipped++;
+                    return null;
+                }
+                probing = true;
+                return new Permit(true, openings);
+            case CLOSED:
+            default:
+                return new Permit(false, openings);
+        }
+    }
+
+    void success(Permit permit, long millis) {
+        latency.record(millis);
+        synchronized (this) {
+            requests++;
+            outcome(false);
+
+            if (permit.probe) {
+                probing = false;
+                circuit = Circuit.CLOSED;
+            }
+            if (circuit == Circuit.CLOSED)
+                consecutiveFailures = 0;
+        }
+    }
+
+    synchronized void failure(Permit permit) {
+        requests++;
+        failures++;
+        outcome(true);
+        consecutiveFailures++;
+
+        if (permit.probe)
+            probing = false;
+        // Sent before the circuit opened, it already is or a probe decides
+        else if (permit.openings != openings || circuit != Circuit.CLOSED)
+            return;
+
+        if (failureThreshold <= 0)
+            return;
+
+        if (permit.probe || consecutiveFailures >= failureThreshold
+                || (outcomeCount >= MIN_OUTCOMES && recentFailures > outcomeCount * MAX_ERROR_RATE)) {
+            circuit = Circuit.OPEN;
+            openedAt = clock.getAsLong();
+            openings++;
+        }
+    }
+
+    // The request was given up on, by us, so it says nothing about the upstream
+    synchronized void release(Permit permit) {
+        if (permit.probe)
+            probing = false;
+    }
+
+    private void outcome(boolean failed) {
+        if (outcomeCount == OUTCOME_SAMPLES && outcomes[nextOutcome])
+            recentFailures--;
+        else if (outcomeCount < OUTCOME_SAMPLES)
+            outcomeCount++;
+
+        outcomes[nextOutcome] = failed;
+        if (failed)
+            recentFailures++;
+        nextOutcome = (nextOutcome + 1) % OUTCOME_SAMPLES;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    LatencyWindow getLatency() {
+        return latency;
+    }
+
+    synchronized Circuit getCircuit() {
+        // Report what the next request would find
+        return circuit == Circuit.OPEN && clock.getAsLong() - openedAt >= cooldown ? Circuit.HALF_OPEN : circuit;
+    }
+
+    synchronized UpstreamDto toDto() {
+        return new UpstreamDto(
+            url,
+            getCircuit().name().toLowerCase(),
+            requests,
+            failures,
+            skipped,
+            outcomeCount == 0 ? 0 : (double) recentFailures / outcomeCount,
+            latency.percentile(50),
+            latency.percentile(95),
+            latency.percentile(99)
+        );
+    }
+
+    static final class Permit {
+        private final boolean probe; // Let through to see if a tripped circuit can close
+        private final long openings;
+
+        private Permit(boolean probe, long openings) {
+            this.probe = probe;
+            this.openings = openings;
+        }
+    }
+}
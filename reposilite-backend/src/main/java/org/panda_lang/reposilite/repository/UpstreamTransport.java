@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * HTTP client used to ask proxied repositories for files.
+ */
+public interface UpstreamTransport extends Closeable {
+
+    /**
+     * @param url the file to get
+     * @param connectTimeout milliseconds to wait for a connection, from the pool or a new one
+     * @param readTimeout milliseconds to wait for data, between any two packets
+     * @return request that is sent once executed
+     */
+    Request get(String url, int connectTimeout, int readTimeout);
+
+    /**
+     * Same as {@link #get(String, int, int)}, but only asks for the headers of the file
+     */
+    Request head(String url, int connectTimeout, int readTimeout);
+
+    Stats getStats();
+
+    interface Request {
+
+        /**
+         * Sends the header along with the request, must be set before it's executed
+         *
+         * @return this request
+         */
+        Request header(String name, String value);
+
+        /**
+         * @return the response, once its headers were received
+         * @throws IOException if the upstream can't be reached, or the request was aborted
+         */
+        Response execute() throws IOException;
+
+        /**
+         * Gives up on the request, even if it's waiting on the upstream. Safe to call from any thread, at any time.
+         */
+        void abort();
+
+        boolean isAborted();
+
+    }
+
+    interface Response extends Closeable {
+
+        String getUrl();
+
+        int getStatus();
+
+        // Null if it wasn't sent
+        String getHeader(String name);
+
+        // -1 if unknown. Responses to a HEAD have no content, this is the length of the file they describe
+        long getContentLength();
+
+        InputStream getContent() throws IOException;
+
+        /**
+         * Releases the connection. Small unread bodies are drained so it can be reused,
+         * the connection of anything else is closed instead of downloading what nobody wants.
+         */
+        @Override
+        void close();
+
+    }
+
+    final class Stats {
+
+        private final int leased;
+        private final int pending;
+        private final int available;
+        private final int max;
+
+        public Stats(int leased, int pending, int available, int max) {
+            this.leased = leased;
+            this.pending = pending;
+            this.available = available;
+            this.max = max;
+        }
+
+        // Connections used by a request right now
+        public int getLeased() {
+            return leased;
+        }
+
+        // Requests waiting for a connection
+        public int getPending() {
+            return pending;
+        }
+
+        // Idle connections kept alive for the next request
+        public int getAvailable() {
+            return available;
+        }
+
+        public int getMax() {
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return "[leased: " + leased + "/" + max + ", pending: " + pending + ", idle: " + available + "]";
+        }
+
+    }
+
+}
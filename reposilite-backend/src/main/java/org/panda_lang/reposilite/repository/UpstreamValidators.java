@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import org.apache.commons.io.FileUtils;
+import org.panda_lang.reposilite.repository.UpstreamTransport.Request;
+import org.panda_lang.reposilite.repository.UpstreamTransport.Response;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Properties;
+
+/*
+ * Where a proxied file that may still change came from, and the validators its upstream sent along with it,
+ * so it can be asked whether the file changed since. Kept next to the repository, see IRepository#getUpstreamFile,
+ * and only for proxied files. Deployed files have none, so they're never replaced by what an upstream has.
+ *
+ * The last modified time of the file itself is when the upstream was last asked.
+ */
+final class UpstreamValidators {
+    private static final String URL = "url";
+    private static final String ETAG = "etag";
+    private static final String LAST_MODIFIED = "lastModified";
+
+    private final String url;
+    private final String etag;
+    private final String lastModified;
+
+    private UpstreamValidators(String url, String etag, String lastModified) {
+        this.url = url;
+        this.etag = etag;
+        this.lastModified = lastModified;
+    }
+
+    // maven-metadata.xml and its checksums, and anything of a SNAPSHOT, are replaced upstream without changing their path
+    static boolean isMutable(String path) {
+        return path.contains("maven-metadata") || path.contains("-SNAPSHOT");
+    }
+
+    static UpstreamValidators of(Response response) {
+        return new UpstreamValidators(response.getUrl(), response.getHeader("ETag"), response.getHeader("Last-Modified"));
+    }
+
+    // Null if the file wasn't proxied, or can't be read
+    static UpstreamValidators read(File file) {
+        Properties properties = new Properties();
+
+        try (InputStream input = Files.newInputStream(file.toPath())) {
+            properties.load(input);
+        } catch (IOException exception) {
+            return null;
+        }
+
+        String url = properties.getProperty(URL);
+        return url == null ? null : new UpstreamValidators(url, properties.getProperty(ETAG), properties.getProperty(LAST_MODIFIED));
+    }
+
+    void write(File file) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty(URL, url);
+        if (etag != null)
+            properties.setProperty(ETAG, etag);
+        if (lastModified != null)
+            properties.setProperty(LAST_MODIFIED, lastModified);
+
+        FileUtils.forceMkdirParent(file);
+        try (OutputStream output = Files.newOutputStream(file.toPath())) {
+            properties.store(output, null);
+        }
+    }
+
+    // Makes the upstream answer with 304 Not Modified, if the file didn't change
+    Request condition(Request request) {
+        if (etag != null)
+            request.header("If-None-Match", etag);
+        if (lastModified != null)
+            request.header("If-Modified-Since", lastModified);
+        return request;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository;
+
+import io.javalin.http.Context;
+import io.javalin.plugin.openapi.annotations.OpenApi;
+import io.javalin.plugin.openapi.annotations.OpenApiContent;
+import io.javalin.plugin.openapi.annotations.OpenApiParam;
+import io.javalin.plugin.openapi.annotations.OpenApiResponse;
+import org.apache.http.HttpStatus;
+import org.panda_lang.reposilite.ReposiliteContext;
+import org.panda_lang.reposilite.auth.IAuthManager;
+import org.panda_lang.reposilite.auth.IAuthedHandler;
+import org.panda_lang.reposilite.auth.Session;
+import org.panda_lang.reposilite.error.ErrorDto;
+import org.panda_lang.reposilite.error.ResponseUtils;
+import org.panda_lang.utilities.commons.function.Result;
+
+final class UpstreamsEndpoint implements IAuthedHandler {
+    private final IRepositoryManager repos;
+    private final IAuthManager auth;
+
+    UpstreamsEndpoint(IRepositoryManager repos, IAuthManager auth) {
+        this.repos = repos;
+        this.auth = auth;
+    }
+
+    @OpenApi(
+        operationId = "upstreams",
+        summary = "Health of the proxied repositories",
+        description = "Circuit breaker state, error rate and response times of every proxied repository asked so far",
+        tags = { "Repository" },
+        headers = {
+            @OpenApiParam(name = "Authorization", description = "Alias and token of a manager provided as basic auth credentials", required = true)
+        },
+        responses = {
+            @OpenApiResponse(status = "200", description = "Health of each proxied repository", content = {
+                @OpenApiContent(from = UpstreamDto.class, isArray = true)
+            }),
+            @OpenApiResponse(status = "401", description = "Error message related to the unauthorized access", content = {
+                @OpenApiContent(from = ErrorDto.class)
+            })
+        }
+    )
+    @Override
+    public void handle(Context ctx, ReposiliteContext context) {
+        // Proxy urls may point at internal hosts, so this is for managers only
+        Result<Session, String> session = auth.getSession(context.headers());
+
+        if (session.isErr()) {
+            ResponseUtils.errorResponse(ctx, HttpStatus.SC_UNAUTHORIZED, session.getError());
+            return;
+        }
+
+        if (!session.get().isManager()) {
+            ResponseUtils.errorResponse(ctx, HttpStatus.SC_UNAUTHORIZED, "Authenticated user is not a manager");
+            return;
+        }
+
+        ctx.json(repos.getUpstreams());
+    }
+}
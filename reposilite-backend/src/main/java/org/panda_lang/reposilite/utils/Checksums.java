@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.utils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+
+import javax.annotation.Nullable;
+
+/**
+ * All {@link HashFunction}s of some data at once, fed while it's written or read anyway, so it's never read again just to hash it.
+ */
+public final class Checksums {
+    private static final HashFunction[] FUNCTIONS = HashFunction.values();
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final MessageDigest[] digests = new MessageDigest[FUNCTIONS.length];
+    private String[] hashes;
+
+    public Checksums() {
+        for (HashFunction function : FUNCTIONS)
+            digests[function.ordinal()] = function.get();
+    }
+
+    public void update(byte[] data, int offset, int length) {
+        if (hashes != null)
+            throw new IllegalStateException("Checksums were already finished");
+
+        for (MessageDigest digest : digests)
+            digest.update(data, offset, length);
+    }
+
+    /**
+     * Copies the stream to the output, hashing it on the way.
+     *
+     * @return the number of copied bytes
+     */
+    public long copy(InputStream input, OutputStream output) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long copied = 0;
+        int read;
+
+        while ((read = input.read(buffer)) != -1) {
+            output.write(buffer, 0, read);
+            update(buffer, 0, read);
+            copied += read;
+        }
+
+        return copied;
+    }
+
+    /**
+     * Finishes all the digests the first time it's called, nothing can be added afterwards.
+     *
+     * @return the padded hex form of the hash
+     */
+    public String get(HashFunction function) {
+        if (hashes == null) {
+            String[] finished = new String[FUNCTIONS.length];
+            for (HashFunction each : FUNCTIONS)
+                finished[each.ordinal()] = each.digest(digests[each.ordinal()]);
+            hashes = finished;
+        }
+
+        return hashes[function.ordinal()];
+    }
+
+    /**
+     * Writes the checksum files Maven looks for next to the file, such as {@code artifact.jar.sha1}.
+     * Each one is replaced at once, so it's never read half written.
+     *
+     * @return how much more the written files take than the ones they replaced
+     */
+    public long writeSidecars(Path file) throws IOException {
+        long growth = 0;
+
+        for (HashFunction function : FUNCTIONS) {
+            Path sidecar = sidecar(file, function);
+            byte[] data = get(function).getBytes(StandardCharsets.UTF_8);
+
+            Path temp = Files.createTempFile(file.getParent(), sidecar.getFileName() + ".", FilesUtils.PARTIAL_SUFFIX);
+            try {
+                Files.write(temp, data);
+                if (Files.exists(sidecar))
+                    growth -= Files.size(sidecar);
+                Files.move(temp, sidecar, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                Files.deleteIfExists(temp);
+            }
+
+            growth += data.length;
+        }
+
+        return growth;
+    }
+
+    public static Path sidecar(Path file, HashFunction function) {
+        return file.resolveSibling(file.getFileName() + "." + function.getExtension());
+    }
+
+    // Checksum files don't get checksums of their own
+    public static boolean hasSidecars(String path) {
+        return sidecarOf(path) == null;
+    }
+
+    // The function of a checksum file, such as sha1 for artifact.jar.sha1, or null if it's not one
+    @Nullable
+    public static HashFunction sidecarOf(String path) {
+        for (HashFunction function : FUNCTIONS) {
+            if (path.endsWith("." + function.getExtension()))
+                return function;
+        }
+        return null;
+    }
+
+    public static Checksums of(Path file) throws IOException {
+        Checksums checksums = new Checksums();
+
+        try (InputStream input = Files.newInputStream(file)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int read;
+            while ((read = input.read(buffer)) != -1)
+                checksums.update(buffer, 0, read);
+        }
+
+        return checksums;
+    }
+}
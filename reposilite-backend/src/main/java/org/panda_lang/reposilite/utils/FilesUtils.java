@@ -27,8 +27,6 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.Locale;
@@ -37,6 +35,9 @@ import java.util.regex.Pattern;
 
 public final class FilesUtils {
 
+    // Files are written next to where they go under this suffix, and moved there once complete
+    public static final String PARTIAL_SUFFIX = ".part";
+
     private static final File[] EMPTY = {};
 
     private final static long KB_FACTOR = 1024;
@@ -56,12 +57,9 @@ public final class FilesUtils {
 
     private FilesUtils() {}
 
+    // Reads the file once for all of them, files that are being stored are hashed while they're written instead
     public static void writeFileChecksums(Path path) throws IOException {
-        for (HashFunction func : new HashFunction[] { HashFunction.MD5, HashFunction.SHA1}) {
-            File file = new File(path.toString() + '.' + func.getExtension());
-            String hash = func.hash(path);
-            Files.write(file.toPath(), hash.getBytes(StandardCharsets.UTF_8));
-        }
+        Checksums.of(path).writeSidecars(path);
     }
 
     public static long displayToBytes(String display) {
@@ -129,6 +127,11 @@ public final class FilesUtils {
         }
     }
 
+    // Still being written, or left behind by a write that never finished
+    public static boolean isPartial(String name) {
+        return name.endsWith(PARTIAL_SUFFIX);
+    }
+
     public static File[] listFiles(File directory) {
         File[] files = directory.listFiles();
         return files == null ? EMPTY : files;
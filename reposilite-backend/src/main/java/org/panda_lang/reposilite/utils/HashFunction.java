@@ -53,7 +53,9 @@ public enum HashFunction {
     }
 
     public String hash(Path path) throws IOException {
-        return hash(Files.readAllBytes(path));
+        try (InputStream stream = Files.newInputStream(path)) {
+            return hash(stream);
+        }
     }
 
     public String hash(Iterable<File> files) throws IOException {
@@ -62,7 +64,9 @@ public enum HashFunction {
         for (File file : files) {
             if (!file.exists())
                 continue;
-            hash.update(Files.readAllBytes(file.toPath()));
+            try (InputStream stream = Files.newInputStream(file.toPath())) {
+                update(hash, stream);
+            }
         }
         return pad(new BigInteger(1, hash.digest()).toString(16));
     }
@@ -72,13 +76,27 @@ public enum HashFunction {
     }
 
     public String hash(InputStream stream) throws IOException {
-        byte[] buf = new byte[0x100];
-        int c;
         MessageDigest md = get();
-        while ((c = stream.read(buf)) > 0) {
+        update(md, stream);
+        return digest(md);
+    }
+
+    private static void update(MessageDigest md, InputStream stream) throws IOException {
+        byte[] buf = new byte[0x2000];
+        int c;
+        while ((c = stream.read(buf)) != -1) {
             md.update(buf, 0, c);
         }
-        return pad(new BigInteger(md.digest()).toString(16));
+    }
+
+    /**
+     * Finishes a digest that was fed elsewhere, such as while copying a stream.
+     *
+     * @param digest a digest of this function, see {@link #get()}
+     * @return the padded hex form of the hash
+     */
+    public String digest(MessageDigest digest) {
+        return pad(new BigInteger(1, digest.digest()).toString(16));
     }
 
     public String hash(byte[] data) {
@@ -16,14 +16,165 @@
 
 package org.panda_lang.reposilite.utils;
 
+import org.apache.commons.io.FileUtils;
 import org.eclipse.jetty.server.HttpOutput;
+import org.eclipse.jetty.util.Callback;
 
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.CompletableFuture;
 
 public final class OutputUtils {
 
+    // Larger files can't be mapped into a single buffer
+    private static final long MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
     private OutputUtils() { }
 
+    /**
+     * Writes the file to the output without copying it through the heap when possible.
+     * Jetty writes memory mapped files straight from the page cache to the socket, which is
+     * pointless over SSL where every byte has to be encrypted anyway, so there (and for files
+     * too large to map) the channel is handed to Jetty to read in its own pooled buffers.
+     * Anything that isn't a Jetty output gets a plain copy.
+     *
+     * @param file the file to send
+     * @param outputStream the response output
+     * @throws IOException if the file can't be read, or the client went away
+     */
+    public static void transferFile(File file, OutputStream outputStream) throws IOException {
+        if (!(outputStream instanceof HttpOutput)) {
+            FileUtils.copyFile(file, outputStream);
+            return;
+        }
+
+        HttpOutput httpOutput = (HttpOutput) outputStream;
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+
+            if (size <= MAX_MAPPED_SIZE && !httpOutput.getHttpChannel().getRequest().isSecure()) {
+                httpOutput.sendContent(channel.map(MapMode.READ_ONLY, 0, size));
+            } else {
+                httpOutput.sendContent(channel);
+            }
+        }
+    }
+
+    /**
+     * Sends part of the file without blocking the calling thread, for responses in async mode.
+     * Mapped like {@link #transferFile(File, OutputStream)} for plain connections. Over SSL, or for files too large
+     * to map, Jetty reads the channel on its own, which it can only do until the end of the file, so partial ranges
+     * of those are written with a blocking {@link #transferRange(File, long, long, OutputStream)} instead.
+     *
+     * @param file the file to send
+     * @param offset position of the first byte to send
+     * @param length amount of bytes to send
+     * @param httpOutput the response output, which is closed once everything was sent
+     * @return future completed once everything was written, or exceptionally if that failed
+     * @throws IOException if the file can't be opened
+     */
+    public static CompletableFuture<Void> transferFileAsync(File file, long offset, long length, HttpOutput httpOutput) throws IOException {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+        try {
+            if (length <= MAX_MAPPED_SIZE && !httpOutput.getHttpChannel().getRequest().isSecure()) {
+                ByteBuffer buffer = channel.map(MapMode.READ_ONLY, offset, length);
+                channel.close();
+                httpOutput.sendContent(buffer, new FutureCallback(future, null));
+                return future;
+            }
+
+            if (offset == 0 && length == channel.size()) {
+                httpOutput.sendContent(channel, new FutureCallback(future, channel));
+                return future;
+            }
+        } catch (IOException | RuntimeException exception) {
+            channel.close();
+            throw exception;
+        }
+
+        channel.close();
+        transferRange(file, offset, length, httpOutput);
+        httpOutput.close();
+        future.complete(null);
+        return future;
+    }
+
+    private static final class FutureCallback implements Callback {
+        private final CompletableFuture<Void> future;
+        private final Closeable resource;
+
+        private FutureCallback(CompletableFuture<Void> future, Closeable resource) {
+            this.future = future;
+            this.resource = resource;
+        }
+
+        @Override
+        public void succeeded() {
+            close();
+            future.complete(null);
+        }
+
+        @Override
+        public void failed(Throwable throwable) {
+            close();
+            future.completeExceptionally(throwable);
+        }
+
+        private void close() {
+            if (resource == null)
+                return;
+            try {
+                resource.close();
+            } catch (IOException ignored) { /* nothing left to read from it anyway */ }
+        }
+    }
+
+    /**
+     * Writes part of the file to the output, without closing it, so several ranges can go to the same response.
+     * Like {@link #transferFile(File, OutputStream)} the range is mapped for plain Jetty outputs, everything else
+     * is read straight from the file channel.
+     *
+     * @param file the file to send
+     * @param offset position of the first byte to send
+     * @param length amount of bytes to send
+     * @param outputStream the response output
+     * @throws IOException if the file can't be read, or the client went away
+     */
+    public static void transferRange(File file, long offset, long length, OutputStream outputStream) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (outputStream instanceof HttpOutput && length <= MAX_MAPPED_SIZE) {
+                HttpOutput httpOutput = (HttpOutput) outputStream;
+
+                if (!httpOutput.getHttpChannel().getRequest().isSecure()) {
+                    httpOutput.write(channel.map(MapMode.READ_ONLY, offset, length));
+                    return;
+                }
+            }
+
+            WritableByteChannel target = Channels.newChannel(outputStream);
+            long end = offset + length;
+
+            while (offset < end) {
+                long transferred = channel.transferTo(offset, end - offset, target);
+                if (transferred <= 0)
+                    throw new EOFException("File " + file + " is shorter than expected");
+                offset += transferred;
+            }
+        }
+    }
+
     public static boolean isProbablyOpen(OutputStream outputStream) {
         if (outputStream instanceof HttpOutput) {
             HttpOutput httpOutput = (HttpOutput) outputStream;
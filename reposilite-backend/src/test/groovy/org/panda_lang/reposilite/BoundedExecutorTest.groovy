@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite
+
+import groovy.transform.CompileStatic
+import org.junit.jupiter.api.Test
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.RejectedExecutionException
+
+import static org.junit.jupiter.api.Assertions.assertEquals
+import static org.junit.jupiter.api.Assertions.assertThrows
+
+@CompileStatic
+class BoundedExecutorTest {
+
+    @Test
+    void 'should reject and count work once threads and queue are full' () {
+        def executor = new BoundedExecutor("test", 1, 1)
+        def started = new CountDownLatch(1)
+        def release = new CountDownLatch(1)
+
+        try {
+            executor.execute({ started.countDown(); release.await() } as Runnable)
+            started.await()
+            executor.execute({} as Runnable)
+
+            assertEquals 1, executor.getQueuedCount()
+            assertThrows(RejectedExecutionException.class, { executor.execute({} as Runnable) })
+            assertEquals 1L, executor.getRejectedCount()
+        } finally {
+            release.countDown()
+            executor.shutdownNow()
+        }
+    }
+
+}
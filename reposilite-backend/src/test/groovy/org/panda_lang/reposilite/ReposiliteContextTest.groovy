@@ -94,6 +94,17 @@ class ReposiliteContextTest {
         assertTrue context.session().isOk()
     }
 
+    @Test
+    void 'should resolve session lazily' () {
+        def ctx = createContext('/api', 'auth', 'password')
+        def context = ReposiliteContext.create(AUTH_MANAGER, REPOSITORY_MANAGER, IP_HEADER, ctx)
+        verify(ctx.req, never()).getHeaderNames()
+
+        assertTrue context.session().isOk()
+        assertTrue context.session().isOk()
+        verify(ctx.req, times(1)).getHeaderNames()
+    }
+
     @Test
     void 'should have invalid session' () {
         def context = ReposiliteContext.create(AUTH_MANAGER, REPOSITORY_MANAGER, IP_HEADER, createContext('/api', 'auth', 'wrong'))
@@ -171,6 +182,41 @@ class ReposiliteContextTest {
     }
 
     @Test
+    void 'should have all repositories and path with view for unknown repository' () {
+        def context = ReposiliteContext.create(AUTH_MANAGER, REPOSITORY_MANAGER, IP_HEADER, createContext('/unknown-releases/some/path'))
+        assertEquals 'unknown-releases/some/path', context.filepath()
+        assertEquals View.RELEASES, context.view()
+        assertIterableEquals REPOSITORY_MANAGER.getRepos(), context.repos()
+    }
+
+    @Test
+    void 'should only take the view after the first hyphen' () {
+        def repos = IRepositoryManager.builder()
+            .dir(new File(WORKING_DIRECTORY, 'hyphenated'))
+            .repo('main', {})
+            .repo('my-repo', {})
+            .repo('main-releases', {})
+            .build()
+        def routes = RouteTable.of(repos)
+
+        def route = routes.resolve('my-repo/some/path')
+        assertIterableEquals([repos.getRepo('my-repo')], route.repos)
+        assertEquals View.ALL, route.view
+
+        // Not my-repo in releases, but a path in all of them
+        route = routes.resolve('my-repo-releases/some/path')
+        assertIterableEquals repos.getRepos(), route.repos
+        assertEquals View.ALL, route.view
+        assertFalse route.strip
+
+        // Always the releases of main, whichever repository was added first
+        route = routes.resolve('main-releases/some/path')
+        assertIterableEquals([repos.getRepo('main')], route.repos)
+        assertEquals View.RELEASES, route.view
+        assertTrue route.strip
+    }
+
+        @Test
     void 'should have all repositories at root' () {
         def context = ReposiliteContext.create(AUTH_MANAGER, REPOSITORY_MANAGER, IP_HEADER, createContext('/'))
         assertEquals '', context.filepath()
@@ -23,6 +23,7 @@ import org.junit.jupiter.api.io.TempDir
 import org.panda_lang.reposilite.repository.IRepositoryManager
 import org.panda_lang.utilities.commons.collection.Maps
 
+import static org.junit.jupiter.api.Assertions.assertEquals
 import static org.junit.jupiter.api.Assertions.assertFalse
 import static org.junit.jupiter.api.Assertions.assertTrue
 
@@ -119,4 +120,41 @@ class AuthenticatorTest {
         assertTrue auth.get().hasPermissionTo("auth/test")
     }
 
-}
\ No newline at end of file
+    @Test
+    void 'should cache verified credentials' () {
+        def cache = credentials()
+        assertTrue AUTH_MANAGER.getSession("alias:secret").isOk()
+        assertEquals 1, cache.size()
+        assertEquals 0, cache.getHitCount()
+
+        assertTrue AUTH_MANAGER.getSession("alias:secret").isOk()
+        assertEquals 1, cache.getHitCount()
+    }
+
+    @Test
+    void 'should not cache invalid credentials' () {
+        assertTrue AUTH_MANAGER.getSession("alias:another_secret").isErr()
+        assertEquals 0, credentials().size()
+    }
+
+    @Test
+    void 'should invalidate cached credentials of revoked token' () {
+        assertTrue AUTH_MANAGER.getSession("alias:secret").isOk()
+        AUTH_MANAGER.deleteToken('alias')
+        assertEquals 0, credentials().size()
+        assertTrue AUTH_MANAGER.getSession("alias:secret").isErr()
+    }
+
+    @Test
+    void 'should invalidate cached credentials of regenerated token' () {
+        assertTrue AUTH_MANAGER.getSession("alias:secret").isOk()
+        AUTH_MANAGER.createToken('/auth/test', 'alias', 'rw', 'new_secret')
+        assertTrue AUTH_MANAGER.getSession("alias:secret").isErr()
+        assertTrue AUTH_MANAGER.getSession("alias:new_secret").isOk()
+    }
+
+    private CredentialCache credentials() {
+        return ((AuthManager) AUTH_MANAGER).@auth.getTokenService().getCredentialCache()
+    }
+
+}
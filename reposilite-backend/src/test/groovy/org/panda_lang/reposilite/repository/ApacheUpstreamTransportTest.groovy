@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository
+
+import groovy.transform.CompileStatic
+import org.apache.commons.io.IOUtils
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+
+import java.nio.charset.StandardCharsets
+
+import static org.junit.jupiter.api.Assertions.*
+
+@CompileStatic
+final class ApacheUpstreamTransportTest {
+
+    private final StubUpstream upstream = new StubUpstream('content')
+    private final UpstreamTransport transport = new ApacheUpstreamTransport(4, 4, 30)
+
+    @AfterEach
+    void close() {
+        transport.close()
+        upstream.close()
+    }
+
+    @Test
+    void 'should reuse the connection for the next request' () {
+        3.times {
+            UpstreamTransport.Response response = transport.get(upstream.getUrl() + '/file.jar', 1000, 1000).execute()
+
+            try {
+                assertEquals 200, response.getStatus()
+                assertEquals 7L, response.getContentLength()
+                assertEquals 'content', IOUtils.toString(response.getContent(), StandardCharsets.UTF_8)
+            } finally {
+                response.close()
+            }
+        }
+
+        assertEquals 0, transport.getStats().getLeased()
+        assertEquals 1, transport.getStats().getAvailable()
+    }
+
+    @Test
+    void 'should keep the connection of an unread error' () {
+        upstream.status = 404
+        transport.get(upstream.getUrl() + '/file.jar', 1000, 1000).execute().close()
+        transport.get(upstream.getUrl() + '/file.jar', 1000, 1000).execute().close()
+
+        assertEquals 1, transport.getStats().getAvailable()
+    }
+
+    @Test
+    void 'should give up on an aborted request' () {
+        upstream.latency = 5000
+        UpstreamTransport.Request request = transport.get(upstream.getUrl() + '/file.jar', 1000, 10000)
+
+        Thread aborting = new Thread({
+            Thread.sleep(200)
+            request.abort()
+        })
+        aborting.start()
+
+        long start = System.currentTimeMillis()
+        assertThrows(IOException.class, { request.execute() })
+        assertTrue System.currentTimeMillis() - start < 5000
+        assertTrue request.isAborted()
+        assertEquals 0, transport.getStats().getLeased()
+    }
+
+}
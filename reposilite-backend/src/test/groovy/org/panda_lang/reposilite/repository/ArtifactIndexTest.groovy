@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository
+
+import groovy.transform.CompileStatic
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.panda_lang.reposilite.repository.ArtifactIndex.IndexedFile
+
+import static org.junit.jupiter.api.Assertions.*
+
+@CompileStatic
+final class ArtifactIndexTest {
+
+    @TempDir
+    protected File workingDirectory
+
+    @Test
+    void 'should answer from the index once scanned' () {
+        def jar = new File(workingDirectory, 'net/minecraftforge/forge/1.0/forge-1.0.jar')
+        jar.parentFile.mkdirs()
+        jar.text = 'content'
+
+        def index = new ArtifactIndex(workingDirectory)
+        index.scan()
+        assertTrue index.isReady()
+
+        // Remove it from disk, anything still claiming it exists came from the index
+        jar.delete()
+
+        def file = index.getFile('net/minecraftforge/forge/1.0/forge-1.0.jar')
+        assertTrue file.exists()
+        assertTrue file.isFile()
+        assertFalse file.isDirectory()
+        assertEquals 7L, file.length()
+
+        def directory = index.getFile('net/minecraftforge/forge/1.0/')
+        assertTrue directory.exists()
+        assertTrue directory.isDirectory()
+
+        assertFalse index.getFile('net/minecraftforge/forge/2.0/forge-2.0.jar').exists()
+    }
+
+    @Test
+    void 'should fall back to disk until scanned' () {
+        def index = new ArtifactIndex(workingDirectory)
+        def file = index.getFile('a/b.txt')
+        assertFalse file.exists()
+
+        file.parentFile.mkdirs()
+        file.text = 'b'
+        assertTrue file.exists()
+    }
+
+    @Test
+    void 'should pick up refreshed files and their parents' () {
+        def index = new ArtifactIndex(workingDirectory)
+        index.scan()
+
+        def file = index.getFile('a/b/c.txt')
+        file.parentFile.mkdirs()
+        file.text = 'abc'
+        assertFalse file.exists()
+
+        ((IndexedFile) file).refresh()
+        assertTrue file.exists()
+        assertEquals 3L, file.length()
+        assertTrue index.getFile('a/b').isDirectory()
+        assertTrue index.getFile('a').isDirectory()
+    }
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository
+
+import groovy.transform.CompileStatic
+import org.junit.jupiter.api.Test
+
+import static org.junit.jupiter.api.Assertions.*
+
+@CompileStatic
+final class ByteRangeTest {
+
+    private static String parse(String header, long length) {
+        def ranges = ByteRange.parse(header, length)
+        return ranges == null ? null : ranges.toString()
+    }
+
+    @Test
+    void 'should parse and clamp ranges' () {
+        assertEquals '[ByteRange[0-9]]', parse('bytes=0-9', 100)
+        assertEquals '[ByteRange[90-99]]', parse('bytes=90-', 100)
+        assertEquals '[ByteRange[90-99]]', parse('bytes=90-500', 100)
+        assertEquals '[ByteRange[80-99]]', parse('bytes=-20', 100)
+        assertEquals '[ByteRange[0-99]]', parse('bytes=-500', 100)
+        assertEquals '[ByteRange[0-0], ByteRange[50-59]]', parse('bytes=0-0, 50-59', 100)
+    }
+
+    @Test
+    void 'should ignore malformed headers' () {
+        assertNull parse('items=0-9', 100)
+        assertNull parse('bytes=9-0', 100)
+        assertNull parse('bytes=a-b', 100)
+        assertNull parse('bytes=5', 100)
+    }
+
+    @Test
+    void 'should drop unsatisfiable ranges' () {
+        assertEquals '[]', parse('bytes=100-200', 100)
+        assertEquals '[]', parse('bytes=-0', 100)
+        assertEquals '[ByteRange[0-9]]', parse('bytes=0-9,200-300', 100)
+    }
+}
@@ -33,6 +33,7 @@ import org.junit.jupiter.api.TestMethodOrder
 import org.panda_lang.reposilite.ReposiliteContext
 import org.panda_lang.reposilite.ReposiliteIntegrationTestSpecification
 import org.panda_lang.reposilite.repository.IRepository.View
+import org.panda_lang.reposilite.utils.HashFunction
 import org.panda_lang.utilities.commons.IOUtils
 import org.panda_lang.utilities.commons.StringUtils
 
@@ -128,6 +129,22 @@ class DeployEndpointTest extends ReposiliteIntegrationTestSpecification {
         assertTrue file.exists()
     }
 
+    @Test
+    void 'should accept checksum of the uploaded artifact'() throws Exception {
+        shouldReturn200AndSuccessMessage '/main-releases/checksum/valid/1.0/valid-1.0.jar', 'root', PASSWORD, 'content'
+        shouldReturn200AndSuccessMessage '/main-releases/checksum/valid/1.0/valid-1.0.jar.sha1', 'root', PASSWORD, HashFunction.SHA1.hash('content')
+        shouldReturn200AndSuccessMessage '/main-releases/checksum/valid/1.0/valid-1.0.jar.md5', 'root', PASSWORD, HashFunction.MD5.hash('content') + '  valid-1.0.jar'
+    }
+
+    @Test
+    void 'should return 400 and reject checksum not matching the uploaded artifact'() throws Exception {
+        shouldReturn200AndSuccessMessage '/main-releases/checksum/invalid/1.0/invalid-1.0.jar', 'root', PASSWORD, 'content'
+        shouldReturnErrorWithGivenMessage '/main-releases/checksum/invalid/1.0/invalid-1.0.jar.sha1', 'root', PASSWORD, HashFunction.SHA1.hash('other'), HttpStatus.SC_BAD_REQUEST, 'Checksum does not match the uploaded artifact'
+
+        def sidecar = super.reposilite.getRepos().getRepo('main').getFile(View.RELEASES, 'checksum/invalid/1.0/invalid-1.0.jar.sha1')
+        assertEquals HashFunction.SHA1.hash('content'), sidecar.text // The one written along with the artifact stays
+    }
+
     private void shouldReturn200AndSuccessMessage(String uri, String username, String password, String content) throws IOException, AuthenticationException {
         def deployResponse = put(uri, username, password, content)
         assertEquals HttpStatus.SC_OK, deployResponse.getStatusLine().getStatusCode()
@@ -61,4 +61,123 @@ final class DiskQuotaTest {
         assertFalse quota.hasSpace()
     }
 
+    @Test
+    void 'should add up the usage of every repository in the background' () {
+        def manager = IRepositoryManager.builder()
+            .dir(workingDirectory)
+            .quota('10GB')
+            .repo('first', {})
+            .repo('second', {})
+            .build()
+
+        def expected = 0L
+        for (int i = 0; i < 50; i++) {
+            def file = new File(workingDirectory, (i % 2 == 0 ? 'first' : 'second') + '/releases/group' + (i % 7) + '/artifact/' + i + '/artifact-' + i + '.jar')
+            file.parentFile.mkdirs()
+            file.text = 'x' * i
+            expected += i
+        }
+
+        def scan = new DiskUsageScan(4)
+        def task = scan.start((DiskQuota) manager.quota, manager.repos, false)
+        assertTrue manager.quota.isProvisional() || scan.isDone()
+
+        task.get()
+        assertTrue scan.isDone()
+        assertFalse manager.quota.isProvisional()
+        assertFalse manager.getRepo('first').quota.isProvisional()
+        assertEquals 50, scan.files
+        assertEquals expected, manager.quota.usage
+        assertEquals expected, manager.getRepo('first').quota.usage + manager.getRepo('second').quota.usage
+    }
+
+    @Test
+    void 'should remember the usage for the next start' () {
+        def first = IRepositoryManager.builder().dir(workingDirectory).repo('main', {}).build()
+        def file = new File(workingDirectory, 'main/releases/group/artifact/1.0/artifact-1.0.jar')
+        file.parentFile.mkdirs()
+        file.text = 'x' * 100
+
+        new DiskUsageScan(4).start((DiskQuota) first.quota, first.repos, false).get()
+        def quota = (DiskQuota) first.getRepo('main').quota
+        quota.allocate(20)
+        quota.allocate(-5)
+        first.save()
+
+        file.text = 'x' * 1000 // Not through the storage, so it doesn't know
+        def second = IRepositoryManager.builder().dir(workingDirectory).repo('main', {}).build()
+        def scan = new DiskUsageScan(4)
+        scan.start((DiskQuota) second.quota, second.repos, false).get()
+
+        assertEquals 115L, second.quota.usage
+        assertEquals 0L, scan.files // Only swept for partial files, nothing was counted
+
+        // Asked to verify it, it's walked again and corrected
+        def third = IRepositoryManager.builder().dir(workingDirectory).repo('main', {}).build()
+        new DiskUsageScan(4).start((DiskQuota) third.quota, third.repos, true).get()
+        assertEquals 1000L, third.quota.usage
+    }
+
+    @Test
+    void 'should remove partial files left behind by the last run' () {
+        def manager = IRepositoryManager.builder().dir(workingDirectory).repo('main', {}).build()
+        def directory = new File(workingDirectory, 'main/releases/group/artifact/1.0')
+        directory.mkdirs()
+        new File(directory, 'artifact-1.0.jar').text = 'x' * 100
+
+        def stale = new File(directory, 'artifact-1.0.jar.123.part')
+        stale.text = 'x' * 50
+        stale.setLastModified(0)
+        def writing = new File(directory, 'artifact-1.0.jar.456.part')
+        writing.text = 'x' * 50
+
+        new DiskUsageScan(4).start((DiskQuota) manager.quota, manager.repos, false).get()
+        assertEquals 100L, manager.quota.usage
+        assertFalse stale.exists()
+        assertTrue writing.exists()
+
+        // Also when the usage is remembered, and the repository isn't walked to count it
+        manager.save()
+        stale.text = 'x' * 50
+        stale.setLastModified(0)
+        def second = IRepositoryManager.builder().dir(workingDirectory).repo('main', {}).build()
+        new DiskUsageScan(4).start((DiskQuota) second.quota, second.repos, false).get()
+        assertEquals 100L, second.quota.usage
+        assertFalse stale.exists()
+    }
+
+    @Test
+    void 'should not count the validators of proxied files' () {
+        def manager = IRepositoryManager.builder().dir(workingDirectory).repo('main', {}).build()
+        def file = new File(workingDirectory, 'main/releases/group/artifact/maven-metadata.xml')
+        file.parentFile.mkdirs()
+        file.text = 'x' * 100
+
+        def validators = manager.getRepo('main').getUpstreamFile(IRepository.View.RELEASES, 'group/artifact/maven-metadata.xml')
+        validators.parentFile.mkdirs()
+        validators.text = 'x' * 50
+
+        new DiskUsageScan(4).start((DiskQuota) manager.quota, manager.repos, false).get()
+        assertEquals 100L, manager.quota.usage
+    }
+
+    @Test
+    void 'should keep changes of a run that did not shut down cleanly' () {
+        def first = IRepositoryManager.builder().dir(workingDirectory).repo('main', {}).build()
+        new DiskUsageScan(4).start((DiskQuota) first.quota, first.repos, false).get()
+
+        def quota = (DiskQuota) first.getRepo('main').quota
+        for (int i = 0; i < 5000; i++) // Past a compaction of the log
+            quota.allocate(2)
+
+        def journal = new QuotaJournal(new File(workingDirectory, 'main'))
+        def remembered = journal.read()
+        assertEquals 10000L, remembered.usage
+        assertFalse remembered.clean
+
+        // A torn record at the end is ignored
+        new File(workingDirectory, 'main/' + QuotaJournal.LOG).append(new byte[5])
+        assertEquals 10000L, new QuotaJournal(new File(workingDirectory, 'main')).read().usage
+    }
+
 }
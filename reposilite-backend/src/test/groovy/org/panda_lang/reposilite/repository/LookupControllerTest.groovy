@@ -292,9 +292,121 @@ class LookupControllerTest extends ReposiliteIntegrationTestSpecification {
         assertTrue response.parseAsString().isEmpty()
     }
     //============================================================================================================
+    // conditional and range requests
+    //============================================================================================================
+    @Test
+    void 'conditional should return 304 for matching etag' () {
+        def path = '/main-releases/reposilite/missing/1.0.0/missing-1.0.0-known.txt'
+        def etag = getRequest(path).headers.getETag()
+        assertNotNull etag
+
+        def request = REQUEST_FACTORY.buildGetRequest(url(path))
+        request.setThrowExceptionOnExecuteError(false)
+        request.headers.setIfNoneMatch(etag)
+        def response = request.execute()
+
+        assertEquals SC_NOT_MODIFIED, response.statusCode
+        assertEquals etag, response.headers.getETag()
+    }
+
+    @Test
+    void 'conditional should return 200 for changed etag' () {
+        def request = REQUEST_FACTORY.buildGetRequest(url('/main-releases/reposilite/missing/1.0.0/missing-1.0.0-known.txt'))
+        request.headers.setIfNoneMatch('"outdated"')
+        def response = request.execute()
+
+        assertEquals SC_OK, response.statusCode
+        assertEquals 'known artifact contents', response.parseAsString()
+    }
+
+    @Test
+    void 'range should return 206 and single range' () {
+        def request = REQUEST_FACTORY.buildGetRequest(url('/main-releases/reposilite/missing/1.0.0/missing-1.0.0-known.txt'))
+        request.headers.setRange('bytes=6-13')
+        def response = request.execute()
+
+        assertEquals SC_PARTIAL_CONTENT, response.statusCode
+        assertEquals 'bytes 6-13/23', response.headers.getContentRange()
+        assertEquals 'artifact', response.parseAsString()
+    }
+
+    @Test
+    void 'range should return 206 and multiple ranges' () {
+        def request = REQUEST_FACTORY.buildGetRequest(url('/main-releases/reposilite/missing/1.0.0/missing-1.0.0-known.txt'))
+        request.headers.setRange('bytes=0-4,-8')
+        def response = request.execute()
+
+        assertEquals SC_PARTIAL_CONTENT, response.statusCode
+        assertTrue response.contentType.startsWith('multipart/byteranges')
+        def content = response.parseAsString()
+        assertTrue content.contains('Content-Range: bytes 0-4/23')
+        assertTrue content.contains('known')
+        assertTrue content.contains('Content-Range: bytes 15-22/23')
+        assertTrue content.contains('contents')
+    }
+
+    @Test
+    void 'range should return 416 for range past the end' () {
+        def request = REQUEST_FACTORY.buildGetRequest(url('/main-releases/reposilite/missing/1.0.0/missing-1.0.0-known.txt'))
+        request.setThrowExceptionOnExecuteError(false)
+        request.headers.setRange('bytes=100-200')
+        def response = request.execute()
+
+        assertEquals SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.statusCode
+        assertEquals 'bytes */23', response.headers.getContentRange()
+    }
+
+    @Test
+    void 'range should return full file for outdated if-range' () {
+        def request = REQUEST_FACTORY.buildGetRequest(url('/main-releases/reposilite/missing/1.0.0/missing-1.0.0-known.txt'))
+        request.headers.setRange('bytes=6-13')
+        request.headers.set('If-Range', '"outdated"')
+        def response = request.execute()
+
+        assertEquals SC_OK, response.statusCode
+        assertEquals 'known artifact contents', response.parseAsString()
+    }
+
+    @Test
+    void 'conditional should change etag of merged meta with its content' () {
+        def all = getRequest('/reposilite/test/maven-metadata.xml').headers.getETag()
+        def releases = getRequest('/releases/reposilite/test/maven-metadata.xml').headers.getETag()
+        assertNotNull all
+        assertNotEquals all, releases
+    }
+
+    @Test
+    void 'async should return 200 and file larger than the response buffer' () {
+        def data = largeFile('/reposilite/large/1.0.0/large-1.0.0.jar')
+        def response = getRequest('/main-releases/reposilite/large/1.0.0/large-1.0.0.jar')
+
+        assertEquals SC_OK, response.statusCode
+        assertArrayEquals data, response.content.bytes
+    }
+
+    @Test
+    void 'async should return 206 and range of file larger than the response buffer' () {
+        def data = largeFile('/reposilite/large/1.0.0/large-1.0.0.jar')
+        def request = REQUEST_FACTORY.buildGetRequest(url('/main-releases/reposilite/large/1.0.0/large-1.0.0.jar'))
+        request.headers.setRange('bytes=1000-500999')
+        def response = request.execute()
+
+        assertEquals SC_PARTIAL_CONTENT, response.statusCode
+        assertArrayEquals Arrays.copyOfRange(data, 1000, 501000), response.content.bytes
+    }
+    //============================================================================================================
 
 
     // HELPERS
+    private byte[] largeFile(String path) {
+        def file = new File(WORKING_DIRECTORY, 'repositories/main/releases' + path)
+        file.parentFile.mkdirs()
+        def data = new byte[1024 * 1024]
+        new Random(0).nextBytes(data)
+        file.bytes = data
+        return data
+    }
+
     private static void assertResponseWithMessage(int status, String url, String message) {
         assertMessage shouldReturnData(status, url), message
     }
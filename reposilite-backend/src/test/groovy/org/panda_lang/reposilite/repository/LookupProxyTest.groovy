@@ -12,9 +12,13 @@ import org.panda_lang.reposilite.config.Configuration
 import org.panda_lang.reposilite.config.ConfigurationLoader
 import org.panda_lang.reposilite.error.FailureService
 import org.panda_lang.reposilite.repository.IRepository.View
+import org.panda_lang.reposilite.utils.HashFunction
 import org.panda_lang.utilities.commons.FileUtils
 
+import java.util.concurrent.Callable
 import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
 
 import static org.apache.http.HttpStatus.*
 import static org.junit.jupiter.api.Assertions.*
@@ -55,6 +59,46 @@ final class LookupProxyTest extends ReposiliteIntegrationTestSpecification {
     void 'should return 200 and proxied file' () {
         def content = shouldReturnData(SC_OK, '/proxy' + FILE_PATH)
         assertEquals FILE_CONTENT, content
+
+        def stored = super.reposilite.repos.getRepo('proxy').getFile(View.RELEASES, FILE_PATH)
+        assertEquals FILE_CONTENT, stored.text
+        assertFalse stored.parentFile.list().any { String name -> name.endsWith('.part') } // No leftover partial downloads
+        assertEquals HashFunction.SHA1.hash(FILE_CONTENT), new File(stored.path + '.sha1').text // Hashed while it was downloaded
+    }
+
+    @Test
+    void 'should stream proxied file larger than the response buffer' () {
+        def path = '/proxiedGroup/large/1.0.0/large-1.0.0.jar'
+        def data = new byte[1024 * 1024]
+        new Random(0).nextBytes(data)
+        def file = super.reposilite.repos.getRepo('main').getFile(View.RELEASES, path)
+        file.parentFile.mkdirs()
+        file.bytes = data
+
+        def response = getRequest('/proxy' + path)
+        assertEquals SC_OK, response.statusCode
+        assertArrayEquals data, response.content.bytes
+        assertArrayEquals data, super.reposilite.repos.getRepo('proxy').getFile(View.RELEASES, path).bytes
+    }
+
+    @Test
+    void 'should return proxied file to every concurrent request' () {
+        ExecutorService executor = Executors.newFixedThreadPool(8)
+
+        try {
+            List<Future<String>> responses = []
+            for (int i = 0; i < 8; i++) {
+                responses.add(executor.submit({ shouldReturnData(SC_OK, '/proxy' + FILE_PATH) } as Callable<String>))
+            }
+
+            for (Future<String> response : responses) {
+                assertEquals FILE_CONTENT, response.get()
+            }
+        } finally {
+            executor.shutdownNow()
+        }
+
+        assertEquals FILE_CONTENT, super.reposilite.repos.getRepo('proxy').getFile(View.RELEASES, FILE_PATH).text
     }
 
     private static void assertResponseWithMessage(int status, String url, String message) {
@@ -0,0 +1,168 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository
+
+import groovy.transform.CompileStatic
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+import org.panda_lang.reposilite.repository.IRepository.View
+import org.panda_lang.reposilite.utils.HashFunction
+
+import java.nio.charset.StandardCharsets
+import java.nio.file.Files
+import java.nio.file.StandardCopyOption
+import java.util.concurrent.Callable
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
+
+import static org.junit.jupiter.api.Assertions.*
+
+@CompileStatic
+final class MetadataCacheTest {
+
+    private static final String PATH = 'group/artifact/maven-metadata.xml'
+
+    @TempDir
+    protected File workingDirectory
+    private final AtomicInteger errors = new AtomicInteger()
+    private IRepository first
+    private IRepository second
+
+    @BeforeEach
+    void setup() {
+        first = IRepository.builder('first').dir(new File(workingDirectory, 'first')).build()
+        second = IRepository.builder('second').dir(new File(workingDirectory, 'second')).build()
+        write(first, '1.0')
+        write(second, '2.0')
+    }
+
+    @Test
+    void 'should count hits and misses' () {
+        def metadata = new MetadataService({ String id, Exception exception -> errors.incrementAndGet() })
+        metadata.mergeMetadata(PATH, PATH, View.RELEASES, [first, second])
+        metadata.mergeMetadata(PATH, PATH, View.RELEASES, [first, second])
+
+        assertEquals 1L, metadata.getCacheStats().hitCount()
+        assertEquals 1L, metadata.getCacheStats().missCount()
+        assertTrue metadata.getCacheBytes() > 0
+    }
+
+    @Test
+    void 'should stay within its size' () {
+        def metadata = new MetadataService({ String id, Exception exception -> errors.incrementAndGet() }, 16 * 1024)
+
+        for (int i = 0; i < 500; i++) {
+            assertNotNull metadata.mergeMetadata('key' + i, PATH, View.RELEASES, [first, second])
+        }
+
+        assertTrue metadata.getCacheBytes() <= 16 * 1024
+        assertTrue metadata.getCacheStats().evictionCount() > 0
+        assertTrue metadata.getCacheSize() < 500
+
+        // Evicted entries no longer wait for changes of their inputs
+        Map inputs = metadata.@cacheInputs
+        inputs.values().each { Object entries -> assertTrue((entries as Set).size() <= metadata.getCacheSize()) }
+        assertEquals 0, errors.get()
+    }
+
+    @Test
+    void 'should serve checksums of the merged file' () {
+        def metadata = new MetadataService({ String id, Exception exception -> errors.incrementAndGet() })
+        def merged = metadata.mergeMetadata(PATH, PATH, View.RELEASES, [first, second])
+
+        for (HashFunction function : HashFunction.values()) {
+            assertEquals function.hash(merged), metadata.mergeMetadataHash(PATH, PATH, View.RELEASES, [first, second], function)
+        }
+
+        assertEquals 1L, metadata.getCacheStats().missCount()
+
+        write(first, '1.1')
+        metadata.clearMetadata(first.getFile(View.RELEASES, PATH))
+        merged = metadata.mergeMetadata(PATH, PATH, View.RELEASES, [first, second])
+        assertEquals HashFunction.SHA1.hash(merged), metadata.mergeMetadataHash(PATH, PATH, View.RELEASES, [first, second], HashFunction.SHA1)
+        assertEquals 0, errors.get()
+    }
+
+    @Test
+    void 'should tag the merged file with its cached hash' () {
+        def metadata = new MetadataService({ String id, Exception exception -> errors.incrementAndGet() })
+        def response = metadata.mergeMetadataResponse(PATH, PATH, View.RELEASES, [first, second])
+
+        assertEquals '"' + HashFunction.SHA1.hash(response.getValue().get()) + '"', response.getETag()
+        assertEquals 1L, metadata.getCacheStats().missCount()
+    }
+
+    @Test
+    void 'should never serve a replaced file once it was cleared' () {
+        def metadata = new MetadataService({ String id, Exception exception -> errors.incrementAndGet() })
+        def running = new AtomicBoolean(true)
+        ExecutorService executor = Executors.newFixedThreadPool(8)
+
+        try {
+            List<Future<?>> readers = []
+            for (int i = 0; i < 7; i++) {
+                readers.add(executor.submit({
+                    while (running.get()) {
+                        assertNotNull metadata.mergeMetadata(PATH, PATH, View.RELEASES, [first, second])
+                    }
+                } as Callable<Object>))
+            }
+
+            def deploys = executor.submit({
+                for (int version = 0; version < 200; version++) {
+                    write(first, '1.' + version)
+                    metadata.clearMetadata(first.getFile(View.RELEASES, PATH))
+                }
+            } as Callable<Object>)
+
+            deploys.get()
+            running.set(false)
+            readers.each { Future<?> reader -> reader.get() }
+        } finally {
+            executor.shutdownNow()
+        }
+
+        def merged = new String(metadata.mergeMetadata(PATH, PATH, View.RELEASES, [first, second]), StandardCharsets.UTF_8)
+        assertTrue merged.contains('<version>1.199</version>')
+        assertTrue merged.contains('<version>2.0</version>')
+        assertEquals 0, errors.get()
+    }
+
+    // Replaced at once, the way stored files are
+    private static void write(IRepository repo, String version) {
+        def file = repo.getFile(View.RELEASES, PATH)
+        file.parentFile.mkdirs()
+
+        def temp = new File(file.parentFile, 'maven-metadata.xml.tmp')
+        temp.text = '<?xml version="1.0" encoding="UTF-8"?>\n' +
+            '<metadata>\n' +
+            '  <groupId>group</groupId>\n' +
+            '  <artifactId>artifact</artifactId>\n' +
+            '  <versioning>\n' +
+            '    <versions>\n' +
+            '      <version>' + version + '</version>\n' +
+            '    </versions>\n' +
+            '  </versioning>\n' +
+            '</metadata>\n'
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING)
+    }
+
+}
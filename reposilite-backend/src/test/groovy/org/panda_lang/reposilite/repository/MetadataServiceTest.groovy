@@ -1,6 +1,9 @@
 package org.panda_lang.reposilite.repository
 
 import groovy.transform.CompileStatic
+import org.apache.maven.artifact.repository.metadata.Metadata
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Reader
+import org.apache.maven.artifact.repository.metadata.io.xpp3.MetadataXpp3Writer
 import org.junit.jupiter.api.Test
 import org.panda_lang.reposilite.ReposiliteTestSpecification
 import org.panda_lang.reposilite.repository.RepositoryManager
@@ -34,6 +37,28 @@ final class MetadataServiceTest extends ReposiliteTestSpecification {
         assertTrue result.contains('1.0.1-SNAPSHOT')
     }
 
+    @Test
+    void 'should merge the same bytes as merging freshly parsed files' () {
+        def path = 'reposilite/test/maven-metadata.xml'
+        assertArrayEquals expected(path), generate(path).getBytes()
+        assertArrayEquals expected(path), generate(path).getBytes() // Cached
+    }
+
+    @Test
+    void 'should merge again once a single input changed' () {
+        def path = 'reposilite/test/maven-metadata.xml'
+        generate(path)
+
+        def releases = super.reposilite.getRepos().getRepo('main').getFile(View.RELEASES, path)
+        releases.text = releases.text.replace('1.0.1', '1.0.2')
+        metadata().clearMetadata(releases)
+
+        def result = generate(path)
+        assertTrue result.contains('1.0.2')
+        assertTrue result.contains('1.0.1-SNAPSHOT')
+        assertArrayEquals expected(path), result.getBytes()
+    }
+
     @Test
     void 'should return snapshot metadata content' () {
         def timestamp = '20211016.230946'
@@ -90,6 +115,30 @@ final class MetadataServiceTest extends ReposiliteTestSpecification {
         return ((RepositoryManager)super.reposilite.repos).@metadataService
     }
 
+    // What merging used to be, every input parsed and merged from scratch
+    private byte[] expected(String path) {
+        def repo = super.reposilite.getRepos().getRepo('main')
+        Metadata merged = null
+
+        for (View view : [View.SNAPSHOTS, View.RELEASES]) {
+            def file = repo.getFile(view, path)
+            if (!file.exists()) {
+                continue
+            }
+
+            def input = file.withInputStream { InputStream stream -> new MetadataXpp3Reader().read(stream) }
+            if (merged == null) {
+                merged = input
+            } else {
+                merged.merge(input)
+            }
+        }
+
+        def output = new ByteArrayOutputStream()
+        new MetadataXpp3Writer().write(output, merged)
+        return output.toByteArray()
+    }
+
     private String generate(String path) {
         def manager = super.reposilite.repos
         def repo = manager.getRepo('main')
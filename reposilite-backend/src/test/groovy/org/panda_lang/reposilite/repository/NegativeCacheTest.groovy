@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository
+
+import groovy.transform.CompileStatic
+import org.junit.jupiter.api.Test
+import org.panda_lang.reposilite.repository.IRepository.View
+
+import static org.junit.jupiter.api.Assertions.*
+
+@CompileStatic
+final class NegativeCacheTest {
+
+    @Test
+    void 'should remember missing paths until stored' () {
+        def repo = IRepository.builder('main').negativeCacheTtl(60).build()
+        def cache = new NegativeCache([ repo ])
+
+        assertFalse cache.isMissing(repo, View.ALL, 'a/b/c/d.jar')
+        cache.missing(repo, View.ALL, 'a/b/c/d.jar')
+        assertTrue cache.isMissing(repo, View.ALL, 'a/b/c/d.jar')
+        assertFalse cache.isMissing(repo, View.RELEASES, 'a/b/c/d.jar')
+
+        cache.invalidate(repo, 'a/b/c/d.jar')
+        assertFalse cache.isMissing(repo, View.ALL, 'a/b/c/d.jar')
+    }
+
+    @Test
+    void 'should not cache repositories without a ttl' () {
+        def repo = IRepository.builder('main').build()
+        def cache = new NegativeCache([ repo ])
+
+        cache.missing(repo, View.ALL, 'a/b/c/d.jar')
+        assertFalse cache.isMissing(repo, View.ALL, 'a/b/c/d.jar')
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository
+
+import groovy.transform.CompileStatic
+import org.junit.jupiter.api.Test
+
+import static org.junit.jupiter.api.Assertions.*
+
+@CompileStatic
+final class PrefixTrieTest {
+
+    private static PrefixTrie<String> trie(String... prefixes) {
+        def trie = new PrefixTrie<String>()
+        for (String prefix : prefixes)
+            trie.add(prefix, prefix)
+        return trie
+    }
+
+    @Test
+    void 'should match like startsWith' () {
+        def prefixes = [ 'net/minecraftforge/', 'de/oceanlabs/mcp', 'cpw/' ] as String[]
+        def trie = trie(prefixes)
+        def paths = [
+            'net/minecraftforge/forge/maven-metadata.xml',
+            'net/minecraftforge',
+            'net/minecraftforgegradle/x',
+            'de/oceanlabs/mcp/mcp_config/1.0/mcp_config-1.0.zip',
+            'de/oceanlabs/mcp_snapshot/x',
+            'de/oceanlabs/mc',
+            'cpw/mods/modlauncher',
+            'org/ow2/asm'
+        ]
+
+        for (String path : paths) {
+            boolean expected = false
+            for (String prefix : prefixes)
+                expected |= path.startsWith(prefix)
+            assertEquals expected, trie.matches(path), path
+        }
+    }
+
+    @Test
+    void 'should collect all matching values' () {
+        def trie = new PrefixTrie<String>()
+        trie.add('net/', 'first')
+        trie.add('net/minecraftforge/', 'second')
+        trie.add('org/', 'third')
+
+        List<String> found = []
+        trie.collect('net/minecraftforge/forge', { String value -> found.add(value) })
+        assertEquals(['first', 'second'], found)
+    }
+
+    @Test
+    void 'should detect virtual directories' () {
+        def trie = trie('net/minecraftforge/forge/', 'de/oceanlabs/mcp')
+        assertTrue trie.isDirectory('net')
+        assertTrue trie.isDirectory('net/minecraftforge')
+        assertTrue trie.isDirectory('net/minecraftforge/forge')
+        assertTrue trie.isDirectory('de/oceanlabs')
+        assertFalse trie.isDirectory('de/oceanlabs/mcp')
+        assertFalse trie.isDirectory('net/minecraft')
+        assertFalse trie.isDirectory('org')
+    }
+
+}
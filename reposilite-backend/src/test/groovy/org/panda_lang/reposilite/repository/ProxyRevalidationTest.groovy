@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository
+
+import groovy.transform.CompileStatic
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.panda_lang.reposilite.ReposiliteIntegrationTestSpecification
+import org.panda_lang.reposilite.repository.IRepository.View
+
+import static org.apache.http.HttpStatus.SC_OK
+import static org.junit.jupiter.api.Assertions.*
+
+@CompileStatic
+final class ProxyRevalidationTest extends ReposiliteIntegrationTestSpecification {
+
+    private static final String METADATA_PATH = '/group/artifact/maven-metadata.xml'
+    private static final String RELEASE_PATH = '/group/artifact/1.0.0/artifact-1.0.0.jar'
+
+    private final StubUpstream upstream = new StubUpstream('v1')
+
+    {
+        upstream.etag = '"v1"'
+        super.properties.putAll([
+            'repositories':                        'main,proxy',
+            'repositories.proxy.proxies':          upstream.url,
+            'repositories.proxy.revalidateTtl':    '1',
+        ])
+    }
+
+    @AfterEach
+    void stopUpstream() {
+        upstream.close()
+    }
+
+    @Test
+    void 'should serve stale metadata while fetching the changed one' () {
+        assertEquals 'v1', shouldReturnData(SC_OK, '/proxy' + METADATA_PATH)
+
+        upstream.content = 'v2'
+        upstream.etag = '"v2"'
+        Thread.sleep(1100) // Past the ttl
+
+        assertEquals 'v1', shouldReturnData(SC_OK, '/proxy' + METADATA_PATH)
+        awaitStored('v2', METADATA_PATH)
+        assertEquals 'v2', shouldReturnData(SC_OK, '/proxy' + METADATA_PATH)
+    }
+
+    @Test
+    void 'should keep metadata the upstream did not modify' () {
+        assertEquals 'v1', shouldReturnData(SC_OK, '/proxy' + METADATA_PATH)
+        Thread.sleep(1100)
+
+        assertEquals 'v1', shouldReturnData(SC_OK, '/proxy' + METADATA_PATH)
+        for (int i = 0; i < 50 && upstream.notModified == 0; i++) {
+            Thread.sleep(100)
+        }
+
+        assertEquals 1, upstream.notModified
+        assertEquals 2, upstream.requests
+    }
+
+    @Test
+    void 'should not revalidate releases' () {
+        assertEquals 'v1', shouldReturnData(SC_OK, '/proxy' + RELEASE_PATH)
+        upstream.content = 'v2'
+        Thread.sleep(1100)
+
+        assertEquals 'v1', shouldReturnData(SC_OK, '/proxy' + RELEASE_PATH)
+        Thread.sleep(500)
+        assertEquals 1, upstream.requests
+    }
+
+    private void awaitStored(String content, String path) {
+        File file = super.reposilite.repos.getRepo('proxy').getFile(View.RELEASES, path)
+        for (int i = 0; i < 50 && read(file) != content; i++) {
+            Thread.sleep(100)
+        }
+        assertEquals content, read(file)
+    }
+
+    private static String read(File file) {
+        try {
+            return file.text
+        } catch (IOException ignored) {
+            return null // Being replaced right now
+        }
+    }
+
+}
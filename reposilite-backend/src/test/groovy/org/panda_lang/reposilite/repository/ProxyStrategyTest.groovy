@@ -0,0 +1,151 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository
+
+import groovy.transform.CompileStatic
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Test
+import org.panda_lang.reposilite.ReposiliteIntegrationTestSpecification
+
+import static org.apache.http.HttpStatus.SC_BAD_GATEWAY
+import static org.apache.http.HttpStatus.SC_INTERNAL_SERVER_ERROR
+import static org.apache.http.HttpStatus.SC_NOT_FOUND
+import static org.apache.http.HttpStatus.SC_OK
+import static org.junit.jupiter.api.Assertions.*
+
+@CompileStatic
+final class ProxyStrategyTest extends ReposiliteIntegrationTestSpecification {
+
+    private static final String FILE_PATH = '/group/artifact/1.0.0/artifact-1.0.0.jar'
+    private static final long SLOW = 3000
+
+    private final StubUpstream slow = new StubUpstream('slow', SLOW)
+    private final StubUpstream fast = new StubUpstream('fast')
+    private final StubUpstream missing = new StubUpstream('', 0, SC_NOT_FOUND)
+    private final StubUpstream failing = new StubUpstream('', 0, SC_INTERNAL_SERVER_ERROR)
+
+    {
+        super.properties.putAll([
+            'proxyConnectTimeout': '5',
+            'proxyReadTimeout':    '5',
+            'proxyCircuitFailures': '5',
+            'repositories':        'main,sequential,fallback,broken,parallel,hedged,hedgedfast',
+            'repositories.sequential.proxies':         slow.url + ',' + fast.url,
+            'repositories.fallback.proxies':           missing.url + ',' + fast.url,
+            'repositories.broken.proxies':             failing.url + ',' + fast.url,
+            'repositories.parallel.proxies':           slow.url + ',' + fast.url,
+            'repositories.parallel.proxyStrategy':     'parallel',
+            'repositories.hedged.proxies':             slow.url + ',' + fast.url,
+            'repositories.hedged.proxyStrategy':       'hedged',
+            'repositories.hedged.hedgeDelay':          '200',
+            'repositories.hedgedfast.proxies':         fast.url + ',' + slow.url,
+            'repositories.hedgedfast.proxyStrategy':   'hedged',
+            'repositories.hedgedfast.hedgeDelay':      '1000',
+        ])
+    }
+
+    @AfterEach
+    void stopUpstreams() {
+        [slow, fast, missing, failing].each { StubUpstream upstream -> upstream.close() }
+    }
+
+    @Test
+    void 'sequential should wait for the first proxy' () {
+        long start = System.currentTimeMillis()
+        assertEquals 'slow', shouldReturnData(SC_OK, '/sequential' + FILE_PATH)
+        assertTrue System.currentTimeMillis() - start >= SLOW
+        assertEquals 0, fast.requests
+    }
+
+    @Test
+    void 'sequential should ask the next proxy on a miss' () {
+        assertEquals 'fast', shouldReturnData(SC_OK, '/fallback' + FILE_PATH)
+        assertEquals 1, missing.requests
+        assertEquals 1, fast.requests
+    }
+
+    @Test
+    void 'should skip a failing proxy once its circuit opened' () {
+        for (int i = 0; i < 8; i++) {
+            assertEquals 'fast', shouldReturnData(SC_OK, '/broken/group/artifact/1.0.' + i + '/artifact-1.0.' + i + '.jar')
+        }
+
+        assertEquals 5, failing.requests
+        def upstream = super.reposilite.repos.upstreams.find { UpstreamDto dto -> dto.url.startsWith(failing.url) }
+        assertEquals 'open', upstream.circuit
+        assertEquals 3L, upstream.skipped
+    }
+
+    @Test
+    void 'should not remember a miss when no proxy could answer' () {
+        assertEquals 'fast', shouldReturnData(SC_OK, '/fallback' + FILE_PATH)
+        fast.status = SC_INTERNAL_SERVER_ERROR
+        missing.status = SC_INTERNAL_SERVER_ERROR
+        shouldReturn(SC_BAD_GATEWAY, '/fallback/group/artifact/2.0.0/artifact-2.0.0.jar')
+
+        fast.status = SC_OK
+        missing.status = SC_NOT_FOUND
+        assertEquals 'fast', shouldReturnData(SC_OK, '/fallback/group/artifact/2.0.0/artifact-2.0.0.jar')
+    }
+
+    @Test
+    void 'head should only ask for headers and be remembered' () {
+        2.times {
+            def response = REQUEST_FACTORY.buildHeadRequest(url('/fallback' + FILE_PATH)).execute()
+            assertEquals SC_OK, response.statusCode
+            assertEquals 4L, response.headers.contentLength
+        }
+
+        assertEquals 1, missing.heads
+        assertEquals 1, fast.heads
+        assertEquals 1, fast.requests // No GET
+        assertFalse super.reposilite.repos.getRepo('fallback').getFile(IRepository.View.RELEASES, FILE_PATH).exists()
+    }
+
+    @Test
+    void 'parallel should use the first proxy to answer' () {
+        long start = System.currentTimeMillis()
+        assertEquals 'fast', shouldReturnData(SC_OK, '/parallel' + FILE_PATH)
+        assertTrue System.currentTimeMillis() - start < SLOW
+        assertEquals 1, slow.requests
+    }
+
+    @Test
+    void 'hedged should ask the next proxy once the first is late' () {
+        long start = System.currentTimeMillis()
+        assertEquals 'fast', shouldReturnData(SC_OK, '/hedged' + FILE_PATH)
+        assertTrue System.currentTimeMillis() - start < SLOW
+        assertEquals 1, slow.requests
+        assertEquals 1, fast.requests
+    }
+
+    @Test
+    void 'hedged should not ask the next proxy if the first is on time' () {
+        assertEquals 'fast', shouldReturnData(SC_OK, '/hedgedfast' + FILE_PATH)
+        Thread.sleep(1500) // Past the hedge delay
+        assertEquals 0, slow.requests
+    }
+
+    @Test
+    void 'losing requests should be cancelled' () {
+        assertEquals 'fast', shouldReturnData(SC_OK, '/parallel' + FILE_PATH)
+        Thread.sleep(SLOW + 500)
+        // The slow upstream answered eventually, but nothing was stored from it
+        assertEquals 'fast', super.reposilite.repos.getRepo('parallel').getFile(IRepository.View.RELEASES, FILE_PATH).text
+    }
+
+}
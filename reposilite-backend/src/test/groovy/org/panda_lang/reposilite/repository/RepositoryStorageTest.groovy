@@ -25,12 +25,16 @@ import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.TestMethodOrder
 import org.junit.jupiter.api.io.TempDir
 import org.panda_lang.reposilite.repository.IRepository.View
+import org.panda_lang.reposilite.utils.HashFunction
 import org.panda_lang.utilities.commons.FileUtils
 import java.nio.channels.FileChannel
 import java.nio.file.OpenOption
 import java.nio.file.StandardOpenOption
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
 import java.util.concurrent.ExecutorService
 import java.util.concurrent.Executors
+import java.util.concurrent.Future
 import java.util.concurrent.ScheduledExecutorService
 import java.util.concurrent.SynchronousQueue
 import java.util.concurrent.ThreadPoolExecutor
@@ -62,10 +66,51 @@ class RepositoryStorageTest {
         def initialUsage = REPOSITORY_MANAGER.quota.usage
         def string = 'test'
         def expectedUsage = initialUsage + string.bytes.length
+        for (HashFunction function : HashFunction.values())
+            expectedUsage += function.hash(string).length() // Along with the checksum files written next to it
 
         REPOSITORY_MANAGER.@storage.storeFile(stream(string), releases, 'file', View.RELEASES)
 
         assertEquals expectedUsage, REPOSITORY_MANAGER.quota.usage
+        assertEquals HashFunction.SHA256.hash(string), releases.getFile(View.RELEASES, 'file.sha256').text
+    }
+
+    @Test
+    void 'should not count replaced file twice'() {
+        def releases = REPOSITORY_MANAGER.getRepo('main')
+        def storage = REPOSITORY_MANAGER.@storage
+
+        storage.storeFile(stream('first version'), releases, 'replaced.txt', View.RELEASES).get()
+        def usage = REPOSITORY_MANAGER.quota.usage
+
+        storage.storeFile(stream('second'), releases, 'replaced.txt', View.RELEASES).get()
+        assertEquals usage - 'first version'.length() + 'second'.length(), REPOSITORY_MANAGER.quota.usage
+    }
+
+    @Test
+    void 'should queue concurrent writes of the same file without waiting' () {
+        def releases = REPOSITORY_MANAGER.getRepo('main')
+        def storage = REPOSITORY_MANAGER.@storage
+        def contents = (0..<16).collect { int i -> 'content ' + i }
+
+        ExecutorService uploads = Executors.newFixedThreadPool(contents.size())
+
+        def start = System.currentTimeMillis()
+        try {
+            List<Future<CompletableFuture<File>>> tasks = contents.collect { String content ->
+                uploads.submit({ storage.storeFile(stream(content), releases, 'a/b/same.txt', View.RELEASES) } as Callable<CompletableFuture<File>>)
+            }
+            tasks.each { Future<CompletableFuture<File>> task -> task.get().get(10, TimeUnit.SECONDS) }
+        } finally {
+            uploads.shutdownNow()
+        }
+
+        assertTrue System.currentTimeMillis() - start < 2000, 'Writes waited for each other too long'
+        def file = releases.getFile(View.RELEASES, 'a/b/same.txt')
+        assertTrue contents.contains(file.text)
+        assertIterableEquals(['same.txt', 'same.txt.md5', 'same.txt.sha1', 'same.txt.sha256', 'same.txt.sha512'], file.parentFile.list().toList().sort())
+        assertEquals HashFunction.SHA1.hash(file.text), new File(file.path + '.sha1').text
+        assertTrue storage.@writes.isEmpty()
     }
 
     /* This test never worked because locks are JVM wide, so we would share it.
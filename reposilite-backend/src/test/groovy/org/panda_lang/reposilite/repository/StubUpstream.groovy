@@ -0,0 +1,118 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository
+
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import groovy.transform.CompileStatic
+
+import java.nio.charset.StandardCharsets
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Remote repository for proxy tests, that serves the same content for every path
+ * after an artificial delay, and counts how often it was asked.
+ */
+@CompileStatic
+final class StubUpstream implements Closeable {
+
+    private final HttpServer server
+    private final AtomicInteger requests = new AtomicInteger()
+    private final AtomicInteger completed = new AtomicInteger()
+    private final AtomicInteger heads = new AtomicInteger()
+    private final AtomicInteger notModified = new AtomicInteger()
+    volatile long latency
+    volatile int status
+    volatile String content
+    volatile String etag // Sent along if set, and answers with 304 if the client has it already
+
+    StubUpstream(String content, long latency = 0, int status = 200) {
+        this.content = content
+        this.latency = latency
+        this.status = status
+        this.server = HttpServer.create(new InetSocketAddress('localhost', 0), 0)
+        this.server.setExecutor(Executors.newCachedThreadPool())
+        this.server.createContext('/', { HttpExchange exchange -> handle(exchange) })
+        this.server.start()
+    }
+
+    private void handle(HttpExchange exchange) {
+        requests.incrementAndGet()
+
+        try {
+            if (latency > 0) {
+                Thread.sleep(latency)
+            }
+
+            byte[] data = content.getBytes(StandardCharsets.UTF_8)
+            exchange.getResponseHeaders().add('Content-Type', 'application/octet-stream')
+
+            if (etag != null) {
+                exchange.getResponseHeaders().add('ETag', etag)
+            }
+
+            if (etag != null && etag == exchange.getRequestHeaders().getFirst('If-None-Match')) {
+                notModified.incrementAndGet()
+                exchange.sendResponseHeaders(304, -1)
+            } else if (exchange.getRequestMethod() == 'HEAD') {
+                heads.incrementAndGet()
+                exchange.getResponseHeaders().add('Content-Length', String.valueOf(data.length))
+                exchange.sendResponseHeaders(status, -1)
+            } else if (status != 200) {
+                exchange.sendResponseHeaders(status, -1)
+            } else {
+                exchange.sendResponseHeaders(200, data.length)
+                exchange.getResponseBody().write(data)
+            }
+
+            completed.incrementAndGet()
+        } catch (IOException | InterruptedException ignored) {
+            // Reposilite went away, as losers of a race do
+        } finally {
+            exchange.close()
+        }
+    }
+
+    String getUrl() {
+        return 'http://localhost:' + server.getAddress().getPort()
+    }
+
+    int getRequests() {
+        return requests.get()
+    }
+
+    int getCompleted() {
+        return completed.get()
+    }
+
+    int getHeads() {
+        return heads.get()
+    }
+
+    int getNotModified() {
+        return notModified.get()
+    }
+
+    @Override
+    void close() {
+        server.stop(0)
+        ((ExecutorService) server.getExecutor()).shutdownNow()
+    }
+
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.repository
+
+import groovy.transform.CompileStatic
+import org.junit.jupiter.api.Test
+import org.panda_lang.reposilite.repository.UpstreamHealth.Circuit
+
+import java.util.concurrent.atomic.AtomicLong
+
+import static org.junit.jupiter.api.Assertions.*
+
+@CompileStatic
+final class UpstreamHealthTest {
+
+    private final AtomicLong clock = new AtomicLong(0)
+    private final UpstreamHealth health = new UpstreamHealth('http://upstream/', 3, 1000, { clock.get() })
+
+    @Test
+    void 'should open after failures in a row' () {
+        2.times { health.failure(health.tryAcquire()) }
+        assertEquals Circuit.CLOSED, health.getCircuit()
+
+        health.failure(health.tryAcquire())
+        assertEquals Circuit.OPEN, health.getCircuit()
+        assertNull health.tryAcquire()
+        assertEquals 1L, health.toDto().skipped
+    }
+
+    @Test
+    void 'should let a single request through once cooled down' () {
+        3.times { health.failure(health.tryAcquire()) }
+        clock.set(1000)
+
+        assertEquals Circuit.HALF_OPEN, health.getCircuit()
+        def probe = health.tryAcquire()
+        assertNotNull probe
+        assertNull health.tryAcquire()
+
+        health.success(probe, 10)
+        assertEquals Circuit.CLOSED, health.getCircuit()
+        assertNotNull health.tryAcquire()
+    }
+
+    @Test
+    void 'should open again if the probe fails' () {
+        3.times { health.failure(health.tryAcquire()) }
+        clock.set(1000)
+
+        health.failure(health.tryAcquire())
+        assertEquals Circuit.OPEN, health.getCircuit()
+
+        clock.set(1999)
+        assertNull health.tryAcquire()
+        clock.set(2000)
+        assertNotNull health.tryAcquire()
+    }
+
+    @Test
+    void 'should let another probe through if the last was cancelled' () {
+        3.times { health.failure(health.tryAcquire()) }
+        clock.set(1000)
+
+        health.release(health.tryAcquire())
+        assertNotNull health.tryAcquire()
+    }
+
+    @Test
+    void 'should only close once the probe answered' () {
+        def slow = health.tryAcquire()
+        3.times { health.failure(health.tryAcquire()) }
+        clock.set(1000)
+
+        // Sent before the circuit opened, it can't tell if the upstream is back
+        health.success(slow, 10)
+        assertEquals Circuit.HALF_OPEN, health.getCircuit()
+
+        def probe = health.tryAcquire()
+        assertNotNull probe
+        health.success(probe, 10)
+        assertEquals Circuit.CLOSED, health.getCircuit()
+    }
+
+    @Test
+    void 'should not let late failures take the probe over' () {
+        def slow = health.tryAcquire()
+        3.times { health.failure(health.tryAcquire()) }
+        clock.set(1000)
+
+        def probe = health.tryAcquire()
+        health.failure(slow)
+        assertNull health.tryAcquire() // Still waiting for the probe
+
+        health.success(probe, 10)
+        assertEquals Circuit.CLOSED, health.getCircuit()
+    }
+
+    @Test
+    void 'should open when most recent requests failed' () {
+        for (int i = 0; i < 11; i++) {
+            def permit = health.tryAcquire()
+            if (i % 3 == 0) {
+                health.success(permit, 10)
+            } else {
+                health.failure(permit)
+            }
+        }
+
+        // Never 3 in a row, but 2 out of every 3
+        assertEquals Circuit.OPEN, health.getCircuit()
+    }
+
+    @Test
+    void 'should report latency percentiles once there are enough responses' () {
+        assertEquals(-1L, health.toDto().p95)
+        for (int i = 1; i <= 20; i++) {
+            health.success(health.tryAcquire(), i * 10)
+        }
+
+        def dto = health.toDto()
+        assertEquals 100L, dto.p50
+        assertEquals 190L, dto.p95
+        assertEquals 0.0d, dto.errorRate
+    }
+
+}
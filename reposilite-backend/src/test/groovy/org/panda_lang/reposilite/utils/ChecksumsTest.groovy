@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2020 Dzikoysk
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.panda_lang.reposilite.utils
+
+import groovy.transform.CompileStatic
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
+
+import static org.junit.jupiter.api.Assertions.*
+
+@CompileStatic
+final class ChecksumsTest {
+
+    @TempDir
+    protected File workingDirectory
+
+    @Test
+    void 'should hash while copying' () {
+        def data = new byte[200 * 1024]
+        new Random(0).nextBytes(data)
+
+        def checksums = new Checksums()
+        def output = new ByteArrayOutputStream()
+        assertEquals data.length as long, checksums.copy(new ByteArrayInputStream(data), output)
+
+        assertArrayEquals data, output.toByteArray()
+        for (HashFunction function : HashFunction.values()) {
+            assertEquals function.hash(data), checksums.get(function)
+        }
+        assertThrows(IllegalStateException.class, { checksums.update(data, 0, 1) })
+    }
+
+    @Test
+    void 'should write checksum files next to the file' () {
+        def file = new File(workingDirectory, 'artifact-1.0.jar')
+        file.text = 'artifact'
+
+        FilesUtils.writeFileChecksums(file.toPath())
+
+        for (HashFunction function : HashFunction.values()) {
+            assertEquals function.hash('artifact'), new File(workingDirectory, 'artifact-1.0.jar.' + function.getExtension()).text
+        }
+        assertEquals 5, workingDirectory.list().length
+    }
+
+    @Test
+    void 'should not write checksums of checksums' () {
+        assertTrue Checksums.hasSidecars('group/artifact/1.0/artifact-1.0.jar')
+        assertTrue Checksums.hasSidecars('group/artifact/maven-metadata.xml')
+        assertFalse Checksums.hasSidecars('group/artifact/1.0/artifact-1.0.jar.sha1')
+        assertFalse Checksums.hasSidecars('group/artifact/maven-metadata.xml.md5')
+    }
+
+}
@@ -18,7 +18,9 @@ package org.panda_lang.reposilite.utils
 
 import org.eclipse.jetty.server.HttpOutput
 import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.io.TempDir
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals
 import static org.junit.jupiter.api.Assertions.assertFalse
 import static org.junit.jupiter.api.Assertions.assertTrue
 import static org.mockito.Mockito.mock
@@ -26,6 +28,9 @@ import static org.mockito.Mockito.when
 
 class OutputUtilsTest {
 
+    @TempDir
+    protected File workingDirectory
+
     @Test
     void 'should return false if http output is closed' () {
         OutputStream output = mock(HttpOutput.class)
@@ -42,4 +47,15 @@ class OutputUtilsTest {
         assertTrue OutputUtils.isProbablyOpen(outputStream)
     }
 
+    @Test
+    void 'should copy file to unknown output stream' () {
+        def file = new File(workingDirectory, 'artifact.jar')
+        file.bytes = 'content'.bytes
+
+        def outputStream = new ByteArrayOutputStream()
+        OutputUtils.transferFile(file, outputStream)
+
+        assertArrayEquals 'content'.bytes, outputStream.toByteArray()
+    }
+
 }